@@ -0,0 +1,127 @@
+package sotasadventure;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stress benchmark of collision between enemies.
+ * It compares checking every pair of enemies with checking only the enemies found in the spatial hash,
+ * on stages which get wider as the number of enemies rises.
+ * Each operation puts the enemies back where they started, so that every tick solves the same collisions.
+ *
+ * Run from the root of the repository:
+ * <pre>
+ * mvn -Pbench package
+ * java -jar target/benchmarks.jar CollisionBenchmark
+ * </pre>
+ *
+ * @author Sota Nishiyama
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class CollisionBenchmark {
+    private static final int ENEMIES_PER_SCREEN = 40;
+    private static final int SCREEN_WIDTH = 1200;
+    private static final int SCREEN_HEIGHT = 600;
+
+    @Param({"10", "100", "1000", "2000", "4000", "8000"})
+    public int enemyCount;
+
+    private ArrayList<Enemy> enemies;
+    private int[] xs;
+    private int[] ys;
+    private int[] vxs;
+    private SpatialHash grid = new SpatialHash(Constants.TILE_SIZE, 1024);
+
+    /**
+     * Places enemies randomly with the same density whatever their number is.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(enemyCount);
+        int width = Math.max(SCREEN_WIDTH, SCREEN_WIDTH * enemyCount / ENEMIES_PER_SCREEN);
+
+        enemies = new ArrayList<Enemy>();
+        xs = new int[enemyCount];
+        ys = new int[enemyCount];
+        vxs = new int[enemyCount];
+        for (int i = 0; i < enemyCount; i++) {
+            Enemy enemy = new Enemy(Constants.TILE_SIZE, Constants.TILE_SIZE);
+            enemy.init(random.nextInt(width), random.nextInt(SCREEN_HEIGHT), 10);
+            enemies.add(enemy);
+            xs[i] = enemy.position.x;
+            ys[i] = enemy.position.y;
+            vxs[i] = enemy.velocity.x;
+        }
+    }
+
+    @Benchmark
+    public int naive() {
+        reset();
+        solveNaively(enemies);
+        return enemies.get(0).position.x;
+    }
+
+    @Benchmark
+    public int grid() {
+        reset();
+        Enemy.fillGrid(enemies, grid);
+        Enemy.solveCollisionBetweenEnemies(enemies, grid);
+        return enemies.get(0).position.x;
+    }
+
+    /**
+     * Puts the enemies back where they started.
+     */
+    private void reset() {
+        for (int i = 0; i < enemyCount; i++) {
+            Enemy enemy = enemies.get(i);
+            enemy.position.x = xs[i];
+            enemy.position.y = ys[i];
+            enemy.velocity.x = vxs[i];
+        }
+    }
+
+    /**
+     * Checks every pair of enemies, which is what the stage did before the spatial hash.
+     */
+    private static void solveNaively(ArrayList<Enemy> enemies) {
+        for (int i = 0; i < enemies.size() - 1; i++) {
+            Enemy enemy1 = enemies.get(i);
+            if (!enemy1.alive) continue;
+
+            for (int j = i + 1; j < enemies.size(); j++) {
+                Enemy enemy2 = enemies.get(j);
+                if (!enemy2.alive) continue;
+
+                if (enemy1.position.y <= enemy2.position.y + enemy2.height && enemy1.position.y + enemy1.height >= enemy2.position.y &&
+                    enemy1.position.x <= enemy2.position.x + enemy2.width && enemy1.position.x + enemy1.width >= enemy2.position.x) {
+                    enemy1.velocity.x *= -1;
+                    enemy2.velocity.x *= -1;
+                    if (enemy1.position.x < enemy2.position.x) {
+                        enemy1.position.x = enemy2.position.x - enemy1.width;
+                    } else {
+                        enemy2.position.x = enemy1.position.x - enemy2.width;
+                    }
+                }
+            }
+        }
+    }
+}
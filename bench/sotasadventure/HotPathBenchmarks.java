@@ -0,0 +1,274 @@
+package sotasadventure;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmarks of the hot paths of the game: collision against walls, tiles, water, drawing the map,
+ * loading the stages, entering a room, and a whole tick of the world with more and more enemies.
+ *
+ * Run from the root of the repository:
+ * <pre>
+ * mvn -Pbench package
+ * java -jar target/benchmarks.jar HotPathBenchmarks -rf json -rff results.json
+ * </pre>
+ *
+ * @author Sota Nishiyama
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HotPathBenchmarks {
+    private static final String STAGE = "europe";
+    private static final int SCREEN_WIDTH = 1200;
+    private static final int SCREEN_HEIGHT = 600;
+
+    // the number of positions the sprites are put at, which is a power of 2
+    private static final int POSITIONS = 1024;
+
+    /**
+     * The map of the stage and positions all over it, so that every kind of tile is hit.
+     */
+    @State(Scope.Thread)
+    public static class MapState {
+        private Map map;
+        private int[] xs = new int[POSITIONS];
+        private int[] ys = new int[POSITIONS];
+        private int next;
+
+        private Sota sota = new Sota(Constants.TILE_SIZE, Constants.TILE_SIZE);
+        private Enemy enemy = new Enemy(Constants.TILE_SIZE, Constants.TILE_SIZE);
+
+        @Setup
+        public void setUp() {
+            map = new Map();
+            map.set(STAGE);
+
+            Random random = new Random(0);
+            for (int i = 0; i < POSITIONS; i++) {
+                xs[i] = random.nextInt(map.getWidth());
+                ys[i] = random.nextInt(map.getHeight());
+            }
+        }
+
+        /**
+         * Returns the index of the next position to use.
+         */
+        private int next() {
+            return next++ & (POSITIONS - 1);
+        }
+    }
+
+    /**
+     * The renderer of the map and the image it draws into.
+     */
+    @State(Scope.Thread)
+    public static class RenderState {
+        private MapRenderer renderer;
+        private BufferedImage image;
+        private Graphics2D g;
+        private int frame;
+
+        @Setup
+        public void setUp(MapState state) {
+            renderer = new MapRenderer(state.map);
+            image = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            g = image.createGraphics();
+        }
+
+        @TearDown
+        public void tearDown() {
+            g.dispose();
+        }
+    }
+
+    /**
+     * The sprites World puts into each room it enters.
+     */
+    @State(Scope.Thread)
+    public static class RoomState {
+        private Map map;
+        private int room;
+
+        private Sota sota = new Sota(Constants.TILE_SIZE, Constants.TILE_SIZE);
+        private SpaceShip spaceShip = new SpaceShip(Constants.TILE_SIZE * 5, Constants.TILE_SIZE * 3);
+        private Pickups pickups = new Pickups();
+
+        @Setup
+        public void setUp() {
+            map = new Map();
+            map.set(STAGE);
+        }
+    }
+
+    /**
+     * A world in a flat stage with the given number of enemies, whose map is kept as a whole or read in chunks.
+     */
+    @State(Scope.Thread)
+    public static class WorldState {
+        @Param({"10", "100", "1000"})
+        public int enemies;
+
+        @Param({"false", "true"})
+        public boolean streamed;
+
+        private World world;
+        private WorldSnapshot snapshot = new WorldSnapshot();
+        private double time;
+
+        @Setup
+        public void setUp() {
+            world = createWorld(enemies, streamed);
+        }
+    }
+
+    @Benchmark
+    public int spriteSolveCollisionAgainstWalls(MapState state) {
+        int i = state.next();
+        Sota sota = state.sota;
+        sota.position.x = state.xs[i];
+        sota.position.y = state.ys[i];
+        sota.velocity.x = 10;
+        sota.velocity.y = 10;
+        sota.solveCollisionAgainstWalls(state.map);
+        return sota.position.x + sota.position.y;
+    }
+
+    @Benchmark
+    public int enemySolveCollisionAgainstWalls(MapState state) {
+        int i = state.next();
+        Enemy enemy = state.enemy;
+        enemy.position.x = state.xs[i];
+        enemy.position.y = state.ys[i];
+        enemy.velocity.x = -10;
+        enemy.velocity.y = 10;
+        enemy.solveCollisionAgainstWalls(state.map);
+        return enemy.position.x + enemy.position.y;
+    }
+
+    @Benchmark
+    public int mapGetTile(MapState state) {
+        int i = state.next();
+        return state.map.getTile(state.xs[i] / Constants.TILE_SIZE, state.ys[i] / Constants.TILE_SIZE);
+    }
+
+    @Benchmark
+    public boolean mapIsWater(MapState state) {
+        int i = state.next();
+        return state.map.isWater(state.xs[i] / Constants.TILE_SIZE, state.ys[i] / Constants.TILE_SIZE);
+    }
+
+    @Benchmark
+    public int mapRendererDraw(MapState state, RenderState render) {
+        // scroll through the map as Sota walks
+        Map map = state.map;
+        int range = Math.max(map.getWidth() - SCREEN_WIDTH, 1);
+        int mapX = -(render.frame++ * 10 % range);
+        render.renderer.draw(render.g, map.getStage(), map.getStageNum(), mapX, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        return render.image.getRGB(0, 0);
+    }
+
+    @Benchmark
+    public int stageLoaderLoad() throws IOException {
+        return StageLoader.load("/resources/stages.properties").size();
+    }
+
+    @Benchmark
+    public int binaryStageLoaderLoad() throws IOException {
+        return BinaryStageLoader.load("/resources/stages.bin").size();
+    }
+
+    @Benchmark
+    public int mapEnterRoom(RoomState state) {
+        // what World does when Sota enters a door, going through the maps of the stage again and again
+        Map map = state.map;
+        if (++state.room == map.getStage().map.length) {
+            state.room = 0;
+            map.set(STAGE);
+        } else {
+            map.next();
+        }
+        state.sota.init(map);
+        state.spaceShip.init(map.getSpaceShipPosition(), map.getSpaceShipSpeed());
+        map.addCoins(state.pickups);
+        return map.getEnemies(Constants.TILE_SIZE, Constants.TILE_SIZE).size() + state.pickups.getCoinCount();
+    }
+
+    @Benchmark
+    public int worldTick(WorldState state) {
+        // what StageState does in a tick, except for reading the keys
+        state.time += 1.0 / Constants.TICK_RATE;
+        state.world.step(state.time, 0);
+        state.world.fillSnapshot(state.snapshot);
+        return state.snapshot.spriteCount;
+    }
+
+    /**
+     * Creates a world in a flat stage with the given number of enemies.
+     * Sota stands behind a wall, so that the enemies keep walking and nobody dies.
+     * The enemies start one by one to the right of the wall and walk between the wall and the end of the map,
+     * so every one of them is moved and collided in each tick.
+     * A streamed map is read in chunks as a large map in the stage file is, so comparing the two shows
+     * what reading the tiles from chunks costs.
+     */
+    private static World createWorld(int enemies, boolean streamed) {
+        int width = enemies * 3 + 10;
+        int height = SCREEN_HEIGHT / Constants.TILE_SIZE;
+
+        int[][] tiles = new int[height][width];
+        for (int j = 0; j < width; j++) {
+            tiles[height - 1][j] = Map.GROUND;
+        }
+        for (int i = height / 2; i < height - 1; i++) {
+            tiles[i][3] = Map.GROUND;
+        }
+        tiles[height - 2][1] = Map.START;
+        for (int k = 0; k < enemies; k++) {
+            tiles[height - 2][6 + k * 3] = Map.ENEMY;
+        }
+
+        final TileLayer dense = TileLayer.of(tiles, Map.GROUND);
+        TileLayer layer = dense;
+        if (streamed) {
+            layer = new ChunkedTileLayer(width, height, Map.GROUND, new ChunkedTileLayer.Source() {
+                @Override
+                public boolean read(int chunkX, byte[] chunk, int offset) {
+                    boolean filled = false;
+                    for (int i = 0; i < dense.getHeight(); i++) {
+                        for (int j = 0; j < ChunkedTileLayer.CHUNK_SIZE && chunkX * ChunkedTileLayer.CHUNK_SIZE + j < dense.getWidth(); j++) {
+                            int tile = dense.get(chunkX * ChunkedTileLayer.CHUNK_SIZE + j, i);
+                            chunk[offset + i * ChunkedTileLayer.CHUNK_SIZE + j] = (byte) tile;
+                            filled |= tile != 0;
+                        }
+                    }
+                    return filled;
+                }
+            });
+        }
+
+        World world = new World();
+        String name = "bench" + enemies;
+        world.getMap().stages.put(name, new Stage(name, new TileLayer[] {layer}, Integer.MAX_VALUE, 0, 10, .7));
+        world.load(name, 5, 0, 0);
+        world.start();
+        return world;
+    }
+}
@@ -0,0 +1,101 @@
+package sotasadventure;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Toolkit;
+import java.awt.image.VolatileImage;
+
+/**
+ * The class that renders a state actively from the game loop.
+ * The state is drawn into an accelerated back buffer which is then copied to the screen directly,
+ * instead of asking Swing to repaint it at some later time.
+ * Frames are only drawn by the game loop; when Swing paints the state, it copies the last finished frame.
+ * Two buffers are used so that the frame being drawn is never the one Swing copies.
+ *
+ * @author Sota Nishiyama
+ */
+public class ActiveRenderer {
+    private State state;
+
+    // the buffer drawn by the game loop, and the last finished frame shared with Swing
+    private VolatileImage back;
+    private VolatileImage front;
+
+    /**
+     * Sets the state rendered by this renderer, and makes the state ignore the repaints of the system.
+     * @param state the state to be rendered
+     */
+    public ActiveRenderer(State state) {
+        this.state = state;
+        state.setIgnoreRepaint(true);
+    }
+
+    /**
+     * Draws a frame of the state and shows it on the screen. Called by the game loop.
+     * @return boolean false if the state cannot be rendered actively now and should be repainted instead
+     */
+    public boolean render() {
+        int width = state.getWidth();
+        int height = state.getHeight();
+        if (width <= 0 || height <= 0 || !state.isShowing()) {
+            return false;
+        }
+
+        GraphicsConfiguration gc = state.getGraphicsConfiguration();
+        if (gc == null) {
+            return false;
+        }
+
+        do {
+            // (re)create the back buffer if it was lost or the state was resized
+            if (back == null || back.getWidth() != width || back.getHeight() != height ||
+                back.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (back != null) {
+                    back.flush();
+                }
+                back = gc.createCompatibleVolatileImage(width, height);
+            }
+
+            Graphics2D g2 = back.createGraphics();
+            g2.setBackground(state.getBackground());
+            try {
+                state.drawFrame(g2);
+            } finally {
+                g2.dispose();
+            }
+
+            synchronized (this) {
+                VolatileImage finished = back;
+                back = front;
+                front = finished;
+            }
+        } while (front.contentsLost());
+
+        Graphics g = state.getGraphics();
+        if (g == null) {
+            return false;
+        }
+        try {
+            paint(g);
+        } finally {
+            g.dispose();
+        }
+
+        Toolkit.getDefaultToolkit().sync();
+        return true;
+    }
+
+    /**
+     * Copies the last finished frame. Called when Swing paints the state, which must not draw the frame itself.
+     * @param g the graphics of the state
+     * @return boolean false if there is no frame to copy
+     */
+    public synchronized boolean paint(Graphics g) {
+        if (front == null || front.contentsLost()) {
+            return false;
+        }
+        g.drawImage(front, 0, 0, null);
+        return true;
+    }
+}
@@ -0,0 +1,136 @@
+package sotasadventure;
+
+import java.awt.Image;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.ImageIcon;
+
+/**
+ * The class that loads images once and shares them.
+ * Images are kept by their path, size, and whether they are flipped, so that an image is never decoded,
+ * scaled, or flipped twice. This class can be used from any thread.
+ *
+ * @author Sota Nishiyama
+ */
+public class Assets {
+    // the size of an image which is not scaled
+    public static final int ORIGINAL = -1;
+
+    private static final ConcurrentHashMap<Key, Image> images = new ConcurrentHashMap<Key, Image>();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong totalBytes = new AtomicLong();
+
+    private static class Key {
+        private final String path;
+        private final int width;
+        private final int height;
+        private final boolean flipped;
+
+        private Key(String path, int width, int height, boolean flipped) {
+            this.path = path;
+            this.width = width;
+            this.height = height;
+            this.flipped = flipped;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return path.equals(key.path) && width == key.width && height == key.height && flipped == key.flipped;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((path.hashCode() * 31 + width) * 31 + height) * 2 + (flipped ? 1 : 0);
+        }
+    }
+
+    /**
+     * Returns the image of its original size.
+     * @param path the path of the image
+     * @return Image the image
+     */
+    public static Image getImage(String path) {
+        return getImage(path, ORIGINAL, ORIGINAL, false);
+    }
+
+    /**
+     * Returns the image scaled into the designated size.
+     * @param path the path of the image
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return Image the scaled image
+     */
+    public static Image getImage(String path, int width, int height) {
+        return getImage(path, width, height, false);
+    }
+
+    /**
+     * Returns the image scaled into the designated size and flipped if necessary.
+     * @param path the path of the image
+     * @param width the width of the image, or ORIGINAL
+     * @param height the height of the image, or ORIGINAL
+     * @param flipped true if the image is flipped horizontally
+     * @return Image the image
+     */
+    public static Image getImage(String path, int width, int height, boolean flipped) {
+        Key key = new Key(path, width, height, flipped);
+
+        Image image = images.get(key);
+        if (image != null) {
+            hits.incrementAndGet();
+            return image;
+        }
+
+        synchronized (Assets.class) {
+            image = images.get(key);
+            if (image != null) {
+                hits.incrementAndGet();
+                return image;
+            }
+
+            misses.incrementAndGet();
+            if (flipped) {
+                image = Util.getFlippedImage(getImage(path, width, height, false));
+            } else if (width == ORIGINAL) {
+                image = new ImageIcon(Assets.class.getResource(path)).getImage();
+            } else {
+                // the original is not kept unless it is requested itself
+                image = Util.getScaledImage(new ImageIcon(Assets.class.getResource(path)).getImage(), width, height);
+            }
+
+            images.put(key, image);
+            totalBytes.addAndGet(4L * image.getWidth(null) * image.getHeight(null));
+        }
+        return image;
+    }
+
+    /**
+     * Returns the number of times a requested image was already loaded.
+     * @return long the number of hits
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times a requested image had to be loaded.
+     * @return long the number of misses
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the memory used by the loaded images, assuming four bytes per pixel.
+     * @return long the total size of the images in bytes
+     */
+    public static long getTotalBytes() {
+        return totalBytes.get();
+    }
+}
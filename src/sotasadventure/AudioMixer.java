@@ -0,0 +1,327 @@
+package sotasadventure;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * The class that plays sounds by mixing them on its own thread into a single line.
+ * A sound played while it is already playing gets another voice instead of being restarted,
+ * up to the number of voices of the sound. When there are no free voices, the oldest voice of
+ * the lowest priority is taken over, or the new sound is dropped if every voice has a higher priority.
+ *
+ * Music is streamed by a MusicStream and mixed with the sounds. When another track is played,
+ * the old track fades out while the new one fades in.
+ *
+ * When there is no line to play sounds on, or the property sotasadventure.audio is "null",
+ * the mixer mixes into nothing at the same pace, so the game and tests behave the same without sound.
+ *
+ * @author Sota Nishiyama
+ */
+public class AudioMixer implements Runnable {
+    public static final int SAMPLE_RATE = 44100;
+    public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+
+    private static final int MAX_VOICES = 16;
+    // about 6 ms of sound is mixed at a time
+    private static final int BLOCK_FRAMES = 256;
+    // the line holds a few blocks, so a sound starts within about 25 ms
+    private static final int LINE_BLOCKS = 4;
+
+    // music fades in and out in a second
+    private static final double FADE_STEP = 1.0 / SAMPLE_RATE;
+    private static final double MUSIC_VOLUME = .5;
+
+    private static AudioMixer shared;
+
+    private final ConcurrentLinkedQueue<Sound> requests = new ConcurrentLinkedQueue<Sound>();
+    // the paths of the tracks to play, or empty strings to stop the music
+    private final ConcurrentLinkedQueue<String> musicRequests = new ConcurrentLinkedQueue<String>();
+
+    // used only by the mixing thread
+    private final Sound[] voices = new Sound[MAX_VOICES];
+    private final int[] positions = new int[MAX_VOICES];
+    private final long[] startTimes = new long[MAX_VOICES];
+    private long mixedFrames;
+
+    private MusicStream music;
+    private double musicGain;
+    private MusicStream fadingMusic;
+    private double fadingGain;
+
+    private int[] mix = new int[BLOCK_FRAMES * 2];
+    private final byte[] block = new byte[BLOCK_FRAMES * 4];
+
+    private SourceDataLine line;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Sets the line the sounds are mixed into.
+     * @param line the line, or null to mix into nothing
+     */
+    public AudioMixer(SourceDataLine line) {
+        this.line = line;
+    }
+
+    /**
+     * Returns the mixer of the game, opening a line and starting it on the first call.
+     * @return AudioMixer the mixer of the game
+     */
+    public static synchronized AudioMixer getShared() {
+        if (shared == null) {
+            shared = new AudioMixer(openLine());
+            shared.start();
+        }
+        return shared;
+    }
+
+    /**
+     * Opens a line in the format of the mixer.
+     * @return SourceDataLine the line, or null if sounds cannot be played
+     */
+    private static SourceDataLine openLine() {
+        if ("null".equals(System.getProperty("sotasadventure.audio"))) return null;
+
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, BLOCK_FRAMES * 4 * LINE_BLOCKS);
+            line.start();
+            return line;
+        } catch (LineUnavailableException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            // there is no mixer which supports the format, as in a headless environment
+            System.err.println("no audio line: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Starts mixing on a new thread.
+     */
+    public synchronized void start() {
+        if (running) return;
+
+        running = true;
+        thread = new Thread(this, "audio-mixer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops mixing and waits for the thread to finish.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) return;
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Plays a sound. This method can be called from any thread.
+     * @param sound the sound, or null to play nothing
+     */
+    public void play(Sound sound) {
+        if (sound != null) {
+            requests.add(sound);
+        }
+    }
+
+    /**
+     * Fades the current music out and a track in. Playing the track which is already playing does nothing.
+     * This method can be called from any thread.
+     * @param path the path of the track, or null to stop the music; a track which does not exist is silent
+     */
+    public void playMusic(String path) {
+        // the game ships without music for now, so a missing track just stops the music instead of opening a stream
+        if (path != null && AudioMixer.class.getResource(path) == null) {
+            path = null;
+        }
+        musicRequests.add(path == null ? "" : path);
+    }
+
+    @Override
+    public void run() {
+        long blockNanos = 1000000000L * BLOCK_FRAMES / SAMPLE_RATE;
+        long next = System.nanoTime();
+
+        while (running) {
+            mix(block);
+
+            if (line != null) {
+                // blocks until the line has room, which paces the loop
+                line.write(block, 0, block.length);
+            } else {
+                next += blockNanos;
+                long sleepTime = next - System.nanoTime();
+                if (sleepTime > 0) {
+                    try {
+                        Thread.sleep(sleepTime / 1000000, (int) (sleepTime % 1000000));
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+            }
+        }
+
+        if (line != null) {
+            line.drain();
+            line.close();
+        }
+    }
+
+    /**
+     * Starts the requested sounds and mixes the next block of the playing ones.
+     * Called by the mixing thread, or directly when the mixer is not started.
+     * @param out the buffer for a block of 16-bit little-endian stereo samples
+     */
+    public void mix(byte[] out) {
+        Sound sound;
+        while ((sound = requests.poll()) != null) {
+            startVoice(sound);
+        }
+
+        String path;
+        while ((path = musicRequests.poll()) != null) {
+            changeMusic(path);
+        }
+
+        int frames = out.length / 4;
+        if (mix.length < frames * 2) {
+            mix = new int[frames * 2];
+        }
+        Arrays.fill(mix, 0, frames * 2, 0);
+
+        if (music != null) {
+            double gain = Math.min(musicGain + FADE_STEP * frames, 1);
+            music.mixInto(mix, frames, musicGain * MUSIC_VOLUME, (gain - musicGain) / frames * MUSIC_VOLUME);
+            musicGain = gain;
+        }
+        if (fadingMusic != null) {
+            double gain = Math.max(fadingGain - FADE_STEP * frames, 0);
+            fadingMusic.mixInto(mix, frames, fadingGain * MUSIC_VOLUME, (gain - fadingGain) / frames * MUSIC_VOLUME);
+            fadingGain = gain;
+            if (gain == 0) {
+                fadingMusic.close();
+                fadingMusic = null;
+            }
+        }
+
+        for (int v = 0; v < MAX_VOICES; v++) {
+            Sound voice = voices[v];
+            if (voice == null) continue;
+
+            int position = positions[v];
+            int n = Math.min(frames, voice.frames - position);
+            short[] samples = voice.samples;
+            for (int i = 0, j = position * 2; i < n * 2; i++, j++) {
+                mix[i] += samples[j];
+            }
+
+            positions[v] = position + n;
+            if (positions[v] == voice.frames) {
+                voices[v] = null;
+            }
+        }
+
+        for (int i = 0; i < frames * 2; i++) {
+            int sample = mix[i];
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            out[i * 2] = (byte) sample;
+            out[i * 2 + 1] = (byte) (sample >> 8);
+        }
+
+        mixedFrames += frames;
+    }
+
+    /**
+     * Starts fading the current music out and the given track in.
+     */
+    private void changeMusic(String path) {
+        if (music != null && music.getPath().equals(path)) return;
+
+        if (fadingMusic != null) {
+            fadingMusic.close();
+        }
+        fadingMusic = music;
+        fadingGain = musicGain;
+
+        music = null;
+        musicGain = 0;
+        if (!path.isEmpty()) {
+            music = new MusicStream(path);
+        }
+    }
+
+    /**
+     * Gives a sound a voice, taking one over if necessary.
+     */
+    private void startVoice(Sound sound) {
+        int playing = 0;
+        int oldestSame = -1;
+        int free = -1;
+        int victim = -1;
+
+        for (int v = 0; v < MAX_VOICES; v++) {
+            Sound voice = voices[v];
+            if (voice == null) {
+                if (free == -1) free = v;
+            } else if (voice == sound) {
+                playing++;
+                if (oldestSame == -1 || startTimes[v] < startTimes[oldestSame]) oldestSame = v;
+            } else if (voice.priority <= sound.priority) {
+                if (victim == -1 || voice.priority < voices[victim].priority ||
+                    voice.priority == voices[victim].priority && startTimes[v] < startTimes[victim]) {
+                    victim = v;
+                }
+            }
+        }
+
+        int v;
+        if (playing >= sound.maxVoices) {
+            // restart the oldest voice of the same sound
+            v = oldestSame;
+        } else if (free != -1) {
+            v = free;
+        } else if (victim != -1) {
+            v = victim;
+        } else if (oldestSame != -1) {
+            v = oldestSame;
+        } else {
+            return;
+        }
+
+        voices[v] = sound;
+        positions[v] = 0;
+        startTimes[v] = mixedFrames;
+    }
+
+    /**
+     * Returns the number of voices playing. Called by the mixing thread.
+     * @return int the number of voices playing
+     */
+    public int getActiveVoices() {
+        int count = 0;
+        for (Sound voice: voices) {
+            if (voice != null) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,84 @@
+package sotasadventure;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+/**
+ * The class that draws an image repeated over the screen behind the map.
+ * The layer scrolls with the camera multiplied by its scroll factor: 0 keeps it fixed on the screen,
+ * 1 moves it with the map, and the values between make it look far away.
+ * The image is tiled once into a cached image slightly larger than the screen,
+ * so that drawing the layer is a single copy of the part which is visible.
+ *
+ * @author Sota Nishiyama
+ */
+public class BackgroundLayer {
+    private Image image;
+    private int tileWidth;
+    private int tileHeight;
+
+    private double scrollFactor;
+
+    private BufferedImage tiled;
+
+    /**
+     * Sets the image and the scroll factor of the layer.
+     * @param image the image to repeat
+     * @param scrollFactor how fast the layer scrolls compared to the map
+     */
+    public BackgroundLayer(Image image, double scrollFactor) {
+        this.image = image;
+        this.tileWidth = image.getWidth(null);
+        this.tileHeight = image.getHeight(null);
+        this.scrollFactor = scrollFactor;
+    }
+
+    /**
+     * Draws the part of the layer which is visible on the screen.
+     * @param g the graphics to draw on
+     * @param mapX the x coordinate of the map on the screen
+     * @param mapY the y coordinate of the map on the screen
+     * @param width the width of the screen
+     * @param height the height of the screen
+     */
+    public void draw(Graphics g, int mapX, int mapY, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+
+        if (tiled == null || tiled.getWidth() < width + tileWidth || tiled.getHeight() < height + tileHeight) {
+            render(width, height);
+        }
+
+        // the part of a tile which is scrolled out of the left and top edges of the screen
+        int offsetX = wrap((int) Math.floor(-mapX * scrollFactor), tileWidth);
+        int offsetY = wrap((int) Math.floor(-mapY * scrollFactor), tileHeight);
+
+        g.drawImage(tiled, 0, 0, width, height, offsetX, offsetY, offsetX + width, offsetY + height, null);
+    }
+
+    /**
+     * Repeats the image over a cached image which covers the screen at any offset.
+     */
+    private void render(int width, int height) {
+        if (tiled != null) {
+            tiled.flush();
+        }
+
+        int columns = (width + tileWidth - 1) / tileWidth + 1;
+        int rows = (height + tileHeight - 1) / tileHeight + 1;
+        tiled = Util.createCompatibleImage(columns * tileWidth, rows * tileHeight);
+
+        Graphics2D g = tiled.createGraphics();
+        for (int i = 0; i < columns; i++) {
+            for (int j = 0; j < rows; j++) {
+                g.drawImage(image, i * tileWidth, j * tileHeight, null);
+            }
+        }
+        g.dispose();
+    }
+
+    private static int wrap(int value, int size) {
+        return (value % size + size) % size;
+    }
+}
@@ -0,0 +1,286 @@
+package sotasadventure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * The class that reads all stages from the binary stage file made by StageConverter.
+ * When the file is on the file system, it is mapped into memory instead of being copied.
+ *
+ * All numbers are big-endian. The file consists of:
+ * <pre>
+ * int     MAGIC
+ * short   VERSION
+ * short   the number of stages
+ * for each stage:
+ *     short   the length of the name, followed by the name in UTF-8
+ *     int     the time limit
+ *     int     the speed of the space ship
+ *     int     the speed of enemies
+ *     double  the friction
+ *     short   the number of maps
+ *     for each map:
+ *         int     the width and the height of the map
+ *         int
+ *         int     the length of the rows, followed by the rows
+ *                 encoded as pairs of a run length (1 to 255) and a tile, which do not go across rows
+ *         int     the length of the spawn table, followed by the spawn table:
+ *                 the tiles of the starting point and the space ship (-1 if there is none),
+ *                 and the number of enemies and coins followed by the tiles of them, all in ints
+ * </pre>
+ *
+ * Maps with Constants.STREAMED_MAP_TILES tiles or more are not decoded at once. Instead, the start of the run
+ * at each chunk of each row is found, and ChunkedTileLayer decodes the chunks from the file when they are used.
+ *
+ * @author Sota Nishiyama
+ */
+public class BinaryStageLoader {
+    public static final int MAGIC = 0x53414456; // "SADV"
+    public static final int VERSION = 2;
+
+    /**
+     * Reads all stages in the binary stage file.
+     * @param path the path of the binary stage file
+     * @return HashMap<String, Stage> the stages by their names
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static HashMap<String, Stage> load(String path) throws IOException {
+        URL url = BinaryStageLoader.class.getResource(path);
+        if (url == null) {
+            throw new IOException(path + " is not found");
+        }
+
+        ByteBuffer buffer;
+        if (url.getProtocol().equals("file")) {
+            RandomAccessFile file;
+            try {
+                file = new RandomAccessFile(new File(url.toURI()), "r");
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+
+            try {
+                FileChannel channel = file.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                file.close();
+            }
+        } else {
+            // a file in a jar cannot be mapped
+            InputStream input = url.openStream();
+            try {
+                buffer = ByteBuffer.wrap(readFully(input));
+            } finally {
+                input.close();
+            }
+        }
+
+        try {
+            return read(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(path + " is truncated");
+        }
+    }
+
+    /**
+     * Reads all stages from the contents of a binary stage file.
+     * @param buffer the contents of the file
+     * @return HashMap<String, Stage> the stages by their names
+     * @throws IOException if the contents are malformed
+     */
+    public static HashMap<String, Stage> read(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("not a stage file");
+        }
+        int version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("unsupported version of stage file: " + version);
+        }
+
+        HashMap<String, Stage> stages = new HashMap<String, Stage>();
+
+        int stageCount = buffer.getShort();
+        for (int s = 0; s < stageCount; s++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+
+            int timeLimit = buffer.getInt();
+            int spaceShipSpeed = buffer.getInt();
+            int enemySpeed = buffer.getInt();
+            double friction = buffer.getDouble();
+
+            TileLayer[] maps = new TileLayer[buffer.getShort()];
+            int[][] spawns = new int[maps.length][];
+            for (int k = 0; k < maps.length; k++) {
+                maps[k] = readTiles(buffer);
+                spawns[k] = readSpawns(buffer);
+            }
+
+            String stageName = new String(name, StandardCharsets.UTF_8);
+            stages.put(stageName, new Stage(stageName, maps, spawns, timeLimit, spaceShipSpeed, enemySpeed, friction));
+        }
+        return stages;
+    }
+
+    /**
+     * Decodes the run-length encoded rows of a map, or indexes them if the map is large.
+     */
+    private static TileLayer readTiles(ByteBuffer buffer) throws IOException {
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        if (width < 0 || height < 0) {
+            throw new IOException("broken map in stage file");
+        }
+        int end = buffer.getInt();
+        end += buffer.position();
+
+        TileLayer tiles;
+        if ((long) width * height >= Constants.STREAMED_MAP_TILES) {
+            tiles = new ChunkedTileLayer(width, height, Map.GROUND, new RowIndex(buffer, width, height));
+        } else {
+            DenseTileLayer dense = new DenseTileLayer(width, height, Map.GROUND);
+            for (int i = 0; i < height; i++) {
+                int j = 0;
+                while (j < width) {
+                    int run = buffer.get() & 0xff;
+                    int tile = buffer.get() & 0xff;
+                    if (run == 0 || j + run > width) {
+                        throw new IOException("broken row " + i + " in stage file");
+                    }
+
+                    dense.fill(j, i, run, tile);
+                    j += run;
+                }
+            }
+            tiles = dense;
+        }
+
+        if (buffer.position() != end) {
+            throw new IOException("broken map in stage file");
+        }
+        return tiles;
+    }
+
+    /**
+     * Reads the spawn table of a map.
+     */
+    private static int[] readSpawns(ByteBuffer buffer) throws IOException {
+        int end = buffer.getInt();
+        end += buffer.position();
+
+        int[] spawns = new int[(end - buffer.position()) / 4];
+        for (int i = 0; i < spawns.length; i++) {
+            spawns[i] = buffer.getInt();
+        }
+
+        // the counts of enemies and coins must fit the length
+        boolean broken = buffer.position() != end || spawns.length < 6;
+        if (!broken) {
+            int enemyCount = spawns[4];
+            broken = enemyCount < 0 || enemyCount > (spawns.length - 6) / 2 || spawns.length != 6 + (enemyCount + spawns[5 + enemyCount * 2]) * 2;
+        }
+        if (broken) {
+            throw new IOException("broken spawn table in stage file");
+        }
+        return spawns;
+    }
+
+    /**
+     * The class that decodes chunks of a large map from its rows in the stage file.
+     */
+    private static class RowIndex extends ChunkedTileLayer.Source {
+        private final ByteBuffer buffer;
+        private final int width;
+        private final int height;
+        private final int columns;
+
+        // the position of the run at the first tile of each chunk of each row, and how far the run starts before it
+        private final int[] positions;
+        private final byte[] offsets;
+        // the columns of chunks which have tiles other than 0
+        private final BitSet filled = new BitSet();
+
+        /**
+         * Finds where the chunks start in the rows, leaving the buffer after the rows.
+         */
+        private RowIndex(ByteBuffer buffer, int width, int height) throws IOException {
+            this.buffer = buffer.duplicate();
+            this.width = width;
+            this.height = height;
+            this.columns = (width + ChunkedTileLayer.CHUNK_SIZE - 1) / ChunkedTileLayer.CHUNK_SIZE;
+
+            positions = new int[height * columns];
+            offsets = new byte[height * columns];
+
+            for (int i = 0; i < height; i++) {
+                int j = 0;
+                while (j < width) {
+                    int position = buffer.position();
+                    int run = buffer.get() & 0xff;
+                    int tile = buffer.get() & 0xff;
+                    if (run == 0 || j + run > width) {
+                        throw new IOException("broken row " + i + " in stage file");
+                    }
+
+                    // the chunks whose first tile is in this run
+                    for (int c = (j + ChunkedTileLayer.CHUNK_SIZE - 1) / ChunkedTileLayer.CHUNK_SIZE; c * ChunkedTileLayer.CHUNK_SIZE < j + run; c++) {
+                        positions[i * columns + c] = position;
+                        offsets[i * columns + c] = (byte) (c * ChunkedTileLayer.CHUNK_SIZE - j);
+                    }
+
+                    if (tile != 0) {
+                        filled.set(j / ChunkedTileLayer.CHUNK_SIZE, (j + run - 1) / ChunkedTileLayer.CHUNK_SIZE + 1);
+                    }
+                    j += run;
+                }
+            }
+        }
+
+        @Override
+        public boolean read(int chunkX, byte[] tiles, int offset) {
+            if (!filled.get(chunkX)) return false;
+
+            int length = Math.min(ChunkedTileLayer.CHUNK_SIZE, width - chunkX * ChunkedTileLayer.CHUNK_SIZE);
+            for (int i = 0; i < height; i++) {
+                int position = positions[i * columns + chunkX];
+                // the start of the run relative to the first tile of the chunk
+                int j = -(offsets[i * columns + chunkX] & 0xff);
+                int row = offset + i * ChunkedTileLayer.CHUNK_SIZE;
+
+                while (j < length) {
+                    int run = buffer.get(position) & 0xff;
+                    int tile = buffer.get(position + 1) & 0xff;
+                    position += 2;
+
+                    if (tile != 0) {
+                        Arrays.fill(tiles, row + Math.max(j, 0), row + Math.min(j + run, length), (byte) tile);
+                    }
+                    j += run;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = input.read(chunk)) != -1) {
+            bytes.write(chunk, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+package sotasadventure;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * The class that draws text from glyphs rendered once into an atlas.
+ * Drawing a glyph is a copy of a part of the atlas, so numbers can be drawn without making strings
+ * and without going through the text pipeline.
+ *
+ * @author Sota Nishiyama
+ */
+public class BitmapFont {
+    // space around each glyph for the parts drawn out of its advance
+    private static final int PADDING = 2;
+
+    private String chars;
+    private BufferedImage atlas;
+    private int[] offsets;
+    private int[] advances;
+    private int ascent;
+
+    /**
+     * Renders the given characters into the atlas.
+     * @param font the font of the glyphs
+     * @param color the color of the glyphs
+     * @param chars the characters which can be drawn
+     */
+    public BitmapFont(Font font, Color color, String chars) {
+        this.chars = chars;
+        offsets = new int[chars.length()];
+        advances = new int[chars.length()];
+
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scratch.createGraphics();
+        FontMetrics metrics = g.getFontMetrics(font);
+        g.dispose();
+
+        ascent = metrics.getAscent();
+        int width = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            offsets[i] = width;
+            advances[i] = metrics.charWidth(chars.charAt(i));
+            width += advances[i] + PADDING * 2;
+        }
+
+        atlas = Util.createCompatibleImage(width, ascent + metrics.getDescent() + PADDING * 2);
+        g = atlas.createGraphics();
+        g.setFont(font);
+        g.setColor(color);
+        for (int i = 0; i < chars.length(); i++) {
+            g.drawString(String.valueOf(chars.charAt(i)), offsets[i] + PADDING, ascent + PADDING);
+        }
+        g.dispose();
+    }
+
+    /**
+     * Draws a character.
+     * @param g the graphics to draw on
+     * @param c the character, which must be in the atlas
+     * @param x the x coordinate of the left of the character
+     * @param baseline the y coordinate of the baseline
+     * @return int the x coordinate of the next character
+     */
+    public int draw(Graphics g, char c, int x, int baseline) {
+        int i = chars.indexOf(c);
+        if (i == -1) {
+            throw new IllegalArgumentException("'" + c + "' is not in the font");
+        }
+
+        int left = x - PADDING;
+        int top = baseline - ascent - PADDING;
+        int width = advances[i] + PADDING * 2;
+        g.drawImage(atlas, left, top, left + width, top + atlas.getHeight(),
+            offsets[i], 0, offsets[i] + width, atlas.getHeight(), null);
+        return x + advances[i];
+    }
+
+    /**
+     * Draws a string.
+     * @param g the graphics to draw on
+     * @param s the string, whose characters must be in the atlas
+     * @param x the x coordinate of the left of the string
+     * @param baseline the y coordinate of the baseline
+     * @return int the x coordinate of the next character
+     */
+    public int draw(Graphics g, String s, int x, int baseline) {
+        for (int i = 0; i < s.length(); i++) {
+            x = draw(g, s.charAt(i), x, baseline);
+        }
+        return x;
+    }
+
+    /**
+     * Draws a number in decimal.
+     * @param g the graphics to draw on
+     * @param value the number
+     * @param x the x coordinate of the left of the number
+     * @param baseline the y coordinate of the baseline
+     * @return int the x coordinate of the next character
+     */
+    public int drawNumber(Graphics g, int value, int x, int baseline) {
+        long n = value;
+        if (n < 0) {
+            x = draw(g, '-', x, baseline);
+            n = -n;
+        }
+
+        long divisor = 1;
+        while (divisor * 10 <= n) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            x = draw(g, (char) ('0' + n / divisor % 10), x, baseline);
+        }
+        return x;
+    }
+
+    /**
+     * Returns the distance from the top of the glyphs to the baseline.
+     * @return int the ascent
+     */
+    public int getAscent() {
+        return ascent;
+    }
+}
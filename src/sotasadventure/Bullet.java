@@ -9,6 +9,7 @@ public class Bullet {
     public static final double SUCCESSION = .6;
 
     public Vector position = new Vector();
+    public Vector lastPosition = new Vector();
     public int speed;
     public int damage = 1;
     public double firedTime;
@@ -29,6 +30,8 @@ public class Bullet {
              alive = false;
          }
 
+         lastPosition.x = position.x;
+         lastPosition.y = position.y;
          position.x += speed;
     }
 }
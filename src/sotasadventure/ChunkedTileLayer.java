@@ -0,0 +1,181 @@
+package sotasadventure;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The class that keeps a layer of a large map in chunks which are read on demand.
+ * A chunk is a strip of CHUNK_SIZE columns which covers the whole height of the map, with a border of
+ * DenseTileLayer.PADDING tiles above and below it, and the columns out of the map on each side are strips of the
+ * border, so a tile is read without checking the edges, just as from DenseTileLayer.
+ * Chunks are kept as long as they are used: whoever ticks the map discards the chunks which have not been
+ * read for a while, so every chunk a sprite stands on is kept however far apart the sprites are, and the chunks
+ * Sota has walked away from are forgotten. Chunks whose tiles are all 0 share a single array and are never read
+ * again. Chunks which have been changed are kept until the layer is discarded.
+ * The layer may be read from any thread, and reading a chunk in memory takes no lock.
+ *
+ * @author Sota Nishiyama
+ */
+public class ChunkedTileLayer extends TileLayer {
+    public static final int CHUNK_SHIFT = 5;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int PADDING = DenseTileLayer.PADDING;
+
+    /**
+     * The class that reads the tiles of chunks.
+     */
+    public static abstract class Source {
+        /**
+         * Reads the tiles of a chunk, row after row from the top of the map, each row CHUNK_SIZE tiles long.
+         * The tiles out of the map are left as they are.
+         * @param chunkX the x coordinate of the chunk
+         * @param tiles the array to put the tiles into, which is filled with 0
+         * @param offset the index of the first tile of the chunk in the array
+         * @return boolean false if the tiles of the chunk are all 0
+         */
+        public abstract boolean read(int chunkX, byte[] tiles, int offset);
+    }
+
+    /**
+     * The class that holds the tiles of a chunk. The tiles are final, so another thread which finds the chunk
+     * in the array of chunks without the lock sees them filled.
+     */
+    private static class Chunk {
+        private final byte[] tiles;
+
+        private Chunk(byte[] tiles) {
+            this.tiles = tiles;
+        }
+    }
+
+    private final Source source;
+    private final int columns;
+
+    // the chunks and the border at each side by their keys, which are the x coordinates of the chunks plus 1,
+    // or null if they are not in memory; read without the lock
+    private final Chunk[] chunks;
+    private final Chunk empty;
+
+    // a bit for each chunk which has been read since the chunks were last discarded, set without the lock,
+    // so a bit lost to another thread only makes its chunk read from the source again
+    private final long[] used;
+
+    // the chunks read from the source, and the ones which have been changed and are never discarded
+    private final BitSet loaded = new BitSet();
+    private final BitSet changed = new BitSet();
+
+    /**
+     * Creates a layer whose tiles are read from a source.
+     * @param width the width of the map in tiles
+     * @param height the height of the map in tiles
+     * @param border the value of the tiles out of the map, from 0 to 255
+     * @param source the source of the tiles
+     */
+    public ChunkedTileLayer(int width, int height, int border, Source source) {
+        super(width, height, border);
+
+        this.source = source;
+        this.columns = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+
+        chunks = new Chunk[columns + 2];
+        used = new long[(columns + 2 + 63) >> 6];
+
+        byte[] outside = new byte[(height + PADDING * 2) << CHUNK_SHIFT];
+        Arrays.fill(outside, (byte) border);
+        chunks[0] = chunks[columns + 1] = new Chunk(outside);
+
+        byte[] tiles = new byte[outside.length];
+        fillBorder(tiles, CHUNK_SIZE);
+        empty = new Chunk(tiles);
+    }
+
+    @Override
+    public int get(int x, int y) {
+        assert checkBorder(x, y);
+
+        int key = (x >> CHUNK_SHIFT) + 1;
+        Chunk chunk = chunks[key];
+        if (chunk == null) {
+            chunk = find(key);
+        } else if ((used[key >> 6] & 1L << key) == 0) {
+            used[key >> 6] |= 1L << key;
+        }
+        return chunk.tiles[(y + PADDING) << CHUNK_SHIFT | x & CHUNK_MASK] & 0xff;
+    }
+
+    @Override
+    public synchronized void set(int x, int y, int value) {
+        checkTile(x, y);
+        checkValue(value);
+
+        int key = (x >> CHUNK_SHIFT) + 1;
+        Chunk chunk = find(key);
+        if (!changed.get(key)) {
+            // a changed chunk cannot be read again, so it is never discarded
+            if (chunk == empty) {
+                chunk = new Chunk(empty.tiles.clone());
+                chunks[key] = chunk;
+            }
+            loaded.clear(key);
+            changed.set(key);
+        }
+        chunk.tiles[(y + PADDING) << CHUNK_SHIFT | x & CHUNK_MASK] = (byte) value;
+    }
+
+    /**
+     * Returns the number of chunks kept in memory, except for the empty ones.
+     * @return int the number of chunks
+     */
+    public synchronized int getChunkCount() {
+        return loaded.cardinality() + changed.cardinality();
+    }
+
+    /**
+     * Discards the chunks which have not been read since the last time this was called.
+     * A chunk being read by another thread stays valid, and is only read from the source again the next time.
+     */
+    public synchronized void discardUnused() {
+        for (int key = loaded.nextSetBit(0); key >= 0; key = loaded.nextSetBit(key + 1)) {
+            if ((used[key >> 6] & 1L << key) == 0) {
+                chunks[key] = null;
+                loaded.clear(key);
+            }
+        }
+        Arrays.fill(used, 0);
+    }
+
+    /**
+     * Returns a chunk, reading it if it is not kept.
+     */
+    private synchronized Chunk find(int key) {
+        Chunk chunk = chunks[key];
+        if (chunk != null) return chunk;
+
+        int chunkX = key - 1;
+        int chunkWidth = Math.min(CHUNK_SIZE, width - (chunkX << CHUNK_SHIFT));
+
+        byte[] tiles = new byte[empty.tiles.length];
+        if (source.read(chunkX, tiles, PADDING << CHUNK_SHIFT) || chunkWidth < CHUNK_SIZE) {
+            fillBorder(tiles, chunkWidth);
+            chunk = new Chunk(tiles);
+            loaded.set(key);
+            used[key >> 6] |= 1L << key;
+        } else {
+            chunk = empty;
+        }
+        chunks[key] = chunk;
+        return chunk;
+    }
+
+    /**
+     * Fills the rows above and below the map and the columns to the right of it with the border.
+     */
+    private void fillBorder(byte[] tiles, int chunkWidth) {
+        Arrays.fill(tiles, 0, PADDING << CHUNK_SHIFT, (byte) border);
+        Arrays.fill(tiles, (height + PADDING) << CHUNK_SHIFT, tiles.length, (byte) border);
+        for (int i = PADDING; i < height + PADDING && chunkWidth < CHUNK_SIZE; i++) {
+            Arrays.fill(tiles, (i << CHUNK_SHIFT) + chunkWidth, (i + 1) << CHUNK_SHIFT, (byte) border);
+        }
+    }
+}
@@ -11,6 +11,18 @@ public class Constants {
     public static int LIFE_MAX = 100;
     public static int COIN_MAX = 100;
     public static int GEM_MAX = 10;
+    // the speeds, gravity, friction and timers all move by a fixed step per update, so the rate is fixed at 10 Hz
+    public static int TICK_RATE = 10;
+    public static int FRAME_RATE = Integer.getInteger("sotasadventure.frameRate", 60);
+    public static boolean ACTIVE_RENDERING = Boolean.getBoolean("sotasadventure.activeRendering");
+    // "binary" or "properties"
+    public static String STAGE_FORMAT = System.getProperty("sotasadventure.stageFormat", "binary");
+    // the maps of the binary stage file with this many tiles or more are read a chunk at a time
+    public static int STREAMED_MAP_TILES = Integer.getInteger("sotasadventure.streamedMapTiles", 1 << 18);
+    // the directory the stages played are recorded into, or null not to record them
+    public static String REPLAY_DIR = System.getProperty("sotasadventure.replayDir");
+    // the directory the times of the profiler are written into with F4
+    public static String PROFILE_DIR = System.getProperty("sotasadventure.profileDir", ".");
     // public static int SOTA_WIDTH;
     // public static int SOTA_HEIGHT;
     // public static int ENEMY_WIDTH;
@@ -0,0 +1,69 @@
+package sotasadventure;
+
+import java.util.Arrays;
+
+/**
+ * The class that keeps all values of a layer in memory.
+ * The values are bytes in a single array, row after row, with a border of PADDING tiles around the map
+ * which holds the value of the tiles out of the map. So any tile of the map or its border can be read
+ * without checking the edges; reading further out of the map is a bug, which is only checked by an assertion.
+ * The class is final, so that the tiles of a dense map are read without a virtual call.
+ *
+ * @author Sota Nishiyama
+ */
+public final class DenseTileLayer extends TileLayer {
+    // sprites never look more than a tile past the sides and the bottom of the map, and never more than
+    // three tiles above it, since they are pushed back onto the map before they jump from above the top row
+    public static final int PADDING = 4;
+
+    private final int stride;
+    private final int rows;
+
+    private final byte[] tiles;
+
+    /**
+     * Creates a layer whose tiles are all the value of the border.
+     * @param width the width of the map in tiles
+     * @param height the height of the map in tiles
+     * @param border the value of the tiles out of the map, from 0 to 255
+     */
+    public DenseTileLayer(int width, int height, int border) {
+        super(width, height, border);
+
+        this.stride = width + PADDING * 2;
+        this.rows = height + PADDING * 2;
+
+        tiles = new byte[stride * rows];
+        Arrays.fill(tiles, (byte) border);
+    }
+
+    @Override
+    public int get(int x, int y) {
+        assert checkBorder(x, y);
+        return tiles[(y + PADDING) * stride + x + PADDING] & 0xff;
+    }
+
+    @Override
+    public void set(int x, int y, int value) {
+        checkTile(x, y);
+        checkValue(value);
+        tiles[(y + PADDING) * stride + x + PADDING] = (byte) value;
+    }
+
+    /**
+     * Changes the values of tiles in a row of the map.
+     * @param x the x coordinate of the first tile
+     * @param y the y coordinate of the tiles
+     * @param length the number of the tiles
+     * @param value the new value, from 0 to 255
+     */
+    public void fill(int x, int y, int length, int value) {
+        if (x < 0 || length < 0 || x + length > width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") to (" + (x + length) + ", " + y + ") is out of the map");
+        }
+        checkValue(value);
+
+        int start = (y + PADDING) * stride + x + PADDING;
+        Arrays.fill(tiles, start, start + length, (byte) value);
+    }
+}
@@ -1,10 +1,6 @@
 package sotasadventure;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Image;
-
-import javax.swing.ImageIcon;
+import java.util.ArrayList;
 
 /**
  * The class that represents an enemy.
@@ -15,11 +11,8 @@ public class Enemy extends Sprite {
 
     private int speedX;
 
-    private Image leftImage;
-    private Image rightImage;
-
     /**
-     * Sets the size of enemies and loads images of enemies.
+     * Sets the size of enemies.
      * @param width the width of enemies
      * @param height the height of enemies
      */
@@ -28,8 +21,6 @@ public class Enemy extends Sprite {
         maxHP = 3;
         damage = 1;
         invincibleDuration = 1;
-        healthColor = Color.RED;
-        loadResources();
     }
 
     /**
@@ -183,44 +174,73 @@ public class Enemy extends Sprite {
     }
 
     /**
-     * Change the direction the enemy is going on hitting a wall.
-     * @param side the side which hit the wall
+     * Registers living enemies to the grid by their indices in the list.
+     * @param enemies an arraylist of enemies
+     * @param grid the grid to register enemies to
      */
-    @Override
-    protected void hitWall(String side) {
-        if (side.equals("right") && velocity.x > 0 ||
-            side.equals("left") && velocity.x < 0) {
-            velocity.x *= -1;
+    public static void fillGrid(ArrayList<Enemy> enemies, SpatialHash grid) {
+        grid.clear();
+        for (int i = 0; i < enemies.size(); i++) {
+            Enemy enemy = enemies.get(i);
+            if (enemy.alive) {
+                grid.insert(i, enemy.position.x, enemy.position.y, enemy.width, enemy.height);
+            }
         }
     }
 
     /**
-     * Draws the enemy and its health bar.
-     * @param g the graphics
-     * @param mapX the x coordinate of the map
-     * @param mapY the y coordinate of the map
+     * Solves collision between an enemy and another enemy, checking only enemies close to each other.
+     * Pairs are solved in the same order as checking every pair would, and the enemies pushed are moved in the grid,
+     * so the result is the same.
+     * @param enemies an arraylist of enemies
+     * @param grid the grid which the enemies are registered to, which is kept up to date
      */
-    @Override
-    public void draw(Graphics g, int mapX, int mapY) {
-        // set the enemy's image
-        if (velocity.x < 0) {
-            image = leftImage;
-        } else {
-            image = rightImage;
+    public static void solveCollisionBetweenEnemies(ArrayList<Enemy> enemies, SpatialHash grid) {
+        for (int i = 0; i < enemies.size() - 1; i++) {
+            Enemy enemy1 = enemies.get(i);
+            if (!enemy1.alive) continue;
+
+            // the enemies up to this index have been checked against enemy1
+            int checked = i;
+
+            int count = grid.query(enemy1.position.x, enemy1.position.y, enemy1.width, enemy1.height);
+            for (int k = 0; k < count; k++) {
+                int j = grid.get(k);
+                if (j <= checked) continue;
+                checked = j;
+
+                Enemy enemy2 = enemies.get(j);
+                if (!enemy2.alive) continue;
+
+                if (enemy1.position.y <= enemy2.position.y + enemy2.height && enemy1.position.y + enemy1.height >= enemy2.position.y &&
+                    enemy1.position.x <= enemy2.position.x + enemy2.width && enemy1.position.x + enemy1.width >= enemy2.position.x) {
+                    enemy1.velocity.x *= -1;
+                    enemy2.velocity.x *= -1;
+                    if (enemy1.position.x < enemy2.position.x) {
+                        enemy1.position.x = enemy2.position.x - enemy1.width;
+                        grid.move(i, enemy1.position.x, enemy1.position.y, enemy1.width, enemy1.height);
+
+                        // enemy1 has moved, so look for the rest of the enemies around where it is now
+                        count = grid.query(enemy1.position.x, enemy1.position.y, enemy1.width, enemy1.height);
+                        k = -1;
+                    } else {
+                        enemy2.position.x = enemy1.position.x - enemy2.width;
+                        grid.move(j, enemy2.position.x, enemy2.position.y, enemy2.width, enemy2.height);
+                    }
+                }
+            }
         }
-
-        super.draw(g, mapX, mapY);
     }
 
     /**
-     * Loads images of enemies.
+     * Change the direction the enemy is going on hitting a wall.
+     * @param side the side which hit the wall
      */
-    private void loadResources() {
-        ImageIcon ii;
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/enemy.png"));
-        leftImage = Util.getScaledImage(ii.getImage(), width, height);
-
-        rightImage = Util.getFlippedImage(leftImage);
+    @Override
+    protected void hitWall(String side) {
+        if (side.equals("right") && velocity.x > 0 ||
+            side.equals("left") && velocity.x < 0) {
+            velocity.x *= -1;
+        }
     }
 }
@@ -0,0 +1,118 @@
+package sotasadventure;
+
+/**
+ * The class that drives the game on its own thread.
+ * The loop updates the state machine at a fixed simulation rate using an accumulator
+ * and renders it as often as the frame rate allows, passing how far the simulation is
+ * between two ticks so that sprites can be drawn at interpolated positions.
+ *
+ * @author Sota Nishiyama
+ */
+public class GameLoop implements Runnable {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // the longest frame the loop catches up on, to avoid the spiral of death
+    private static final long MAX_FRAME_TIME = NANOS_PER_SECOND / 4;
+    private static final int MAX_UPDATES_PER_FRAME = 5;
+
+    private StateMachine gameMode;
+
+    private final long tickLength;
+    private final long frameLength;
+
+    private long ticks;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Sets the state machine driven by this loop and its rates.
+     * @param gameMode the state machine of the game
+     * @param tickRate the number of updates per second
+     * @param frameRate the maximum number of renders per second
+     */
+    public GameLoop(StateMachine gameMode, int tickRate, int frameRate) {
+        this.gameMode = gameMode;
+        this.tickLength = NANOS_PER_SECOND / tickRate;
+        this.frameLength = NANOS_PER_SECOND / frameRate;
+    }
+
+    /**
+     * Starts the loop on a new thread.
+     */
+    public synchronized void start() {
+        if (running) return;
+
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the loop and waits for its thread to finish.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) return;
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Returns the time simulated so far.
+     * @return double the simulated time in seconds
+     */
+    public double getTime() {
+        return (double) ticks * tickLength / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = tickLength;
+
+        while (running) {
+            long frameStart = System.nanoTime();
+            long frameTime = frameStart - previous;
+            previous = frameStart;
+
+            // do not try to catch up on a long stall
+            if (frameTime > MAX_FRAME_TIME) {
+                frameTime = MAX_FRAME_TIME;
+            }
+            accumulator += frameTime;
+
+            // update the current State at the fixed rate
+            int updates = 0;
+            while (accumulator >= tickLength) {
+                gameMode.update(getTime());
+                ticks++;
+                accumulator -= tickLength;
+
+                if (++updates == MAX_UPDATES_PER_FRAME) {
+                    accumulator %= tickLength;
+                    break;
+                }
+            }
+
+            // render the current State between the last two updates
+            gameMode.render((double) accumulator / tickLength);
+
+            // wait for the next frame
+            long sleepTime = frameLength - (System.nanoTime() - frameStart);
+            if (sleepTime > 0) {
+                try {
+                    Thread.sleep(sleepTime / 1000000, (int) (sleepTime % 1000000));
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+        }
+    }
+}
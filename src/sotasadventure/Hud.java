@@ -0,0 +1,136 @@
+package sotasadventure;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * The class that shows numbers with icons at the top of the screen, such as lives and coins.
+ * The strip of the HUD is kept as an image, and an item of it is drawn again only when its number changes.
+ * A HUD must be used only by the thread which draws it.
+ *
+ * @author Sota Nishiyama
+ */
+public class Hud {
+    private static final int HEIGHT = Constants.TILE_SIZE + 10;
+    private static final int ICON_Y = 5;
+    private static final int TEXT_X = 40;
+    private static final int BASELINE = 40;
+
+    private static BitmapFont font;
+
+    private int width;
+    private BufferedImage strip;
+
+    private ArrayList<Item> items = new ArrayList<Item>();
+
+    private class Item {
+        private Image icon;
+        private int x;
+        private boolean times;
+
+        private int value;
+        private int drawnValue;
+        private boolean drawn = false;
+
+        // the width of the part of the strip which the item has drawn on
+        private int drawnWidth;
+
+        private Item(Image icon, int x, boolean times) {
+            this.icon = icon;
+            this.x = x;
+            this.times = times;
+        }
+    }
+
+    /**
+     * Sets the width of the HUD.
+     * @param width the width of the HUD
+     */
+    public Hud(int width) {
+        this.width = width;
+    }
+
+    /**
+     * Adds an item, which must be on the right of the items added before.
+     * @param icon the icon of the item
+     * @param x the x coordinate of the icon
+     * @param times true if " x " is shown between the icon and the number
+     * @return int the index of the item
+     */
+    public int addItem(Image icon, int x, boolean times) {
+        items.add(new Item(icon, x, times));
+        return items.size() - 1;
+    }
+
+    /**
+     * Sets the number of an item.
+     * @param item the index of the item
+     * @param value the number
+     */
+    public void set(int item, int value) {
+        items.get(item).value = value;
+    }
+
+    /**
+     * Draws the HUD, updating the items whose numbers have changed.
+     * @param g the graphics to draw on
+     */
+    public void draw(Graphics g) {
+        if (strip == null) {
+            strip = Util.createCompatibleImage(width, HEIGHT);
+        }
+
+        BitmapFont font = getFont();
+        Graphics2D g2 = null;
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            if (item.drawn && item.drawnValue == item.value) continue;
+
+            if (g2 == null) {
+                g2 = strip.createGraphics();
+            }
+
+            // an item owns the strip until the next item
+            int right = i + 1 < items.size() ? items.get(i + 1).x : width;
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(item.x, 0, right - item.x, HEIGHT);
+            g2.setComposite(AlphaComposite.SrcOver);
+
+            g2.drawImage(item.icon, item.x, ICON_Y, null);
+            int x = item.x + TEXT_X;
+            if (item.times) {
+                x = font.draw(g2, " x ", x, BASELINE);
+            }
+            x = font.drawNumber(g2, item.value, x, BASELINE);
+
+            item.drawnValue = item.value;
+            item.drawn = true;
+            item.drawnWidth = Math.min(Math.max(x, item.x + item.icon.getWidth(null)), right) - item.x;
+        }
+        if (g2 != null) {
+            g2.dispose();
+        }
+
+        // copy only the parts with something on them
+        for (Item item: items) {
+            g.drawImage(strip, item.x, 0, item.x + item.drawnWidth, HEIGHT,
+                item.x, 0, item.x + item.drawnWidth, HEIGHT, null);
+        }
+    }
+
+    /**
+     * Returns the font shared by all HUDs, rendering it on the first call.
+     */
+    private static synchronized BitmapFont getFont() {
+        if (font == null) {
+            font = new BitmapFont(new Font("Consolas", Font.PLAIN, 30), Color.WHITE, " x-0123456789");
+        }
+        return font;
+    }
+}
@@ -0,0 +1,120 @@
+package sotasadventure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The class that passes the keys pressed on the event dispatch thread to the game loop.
+ * Each press and release is put into a ring buffer with the time it happened, and the game loop
+ * drains the buffer at the start of a tick into a bitmask of buttons.
+ * Only one thread may press and release buttons, and only one thread may poll them,
+ * so the buffer needs no locks.
+ *
+ * A button which is pressed and released between two ticks still counts as pressed in the next tick.
+ * FIRE and ATTACK are triggered when they are released and count for a single tick.
+ *
+ * @author Sota Nishiyama
+ */
+public class Input {
+    public static final int RIGHT = 1;
+    public static final int LEFT = 2;
+    public static final int UP = 4;
+    public static final int FIRE = 8;
+    public static final int ATTACK = 16;
+
+    // the buttons triggered on release
+    private static final int TRIGGERS = FIRE | ATTACK;
+
+    static final int CAPACITY = 256;
+    private static final int RELEASED = 1 << 31;
+
+    private final int[] events = new int[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+
+    // the number of events written and read, only ever increased
+    private volatile long written;
+    private volatile long read;
+
+    // the events before this are forgotten when the polling thread sees a new clear
+    private volatile long clearedUntil;
+    private final AtomicInteger clears = new AtomicInteger();
+
+    // used only by the polling thread
+    private int held;
+    private int appliedClears;
+
+    /**
+     * Records that a button is pressed. Called by the producer thread.
+     * @param button the button
+     * @param time the time of the press in nanoseconds
+     * @return boolean false if the buffer is full and the press is dropped
+     */
+    public boolean press(int button, long time) {
+        return offer(button, time);
+    }
+
+    /**
+     * Records that a button is released. Called by the producer thread.
+     * @param button the button
+     * @param time the time of the release in nanoseconds
+     * @return boolean false if the buffer is full and the release is dropped
+     */
+    public boolean release(int button, long time) {
+        return offer(button | RELEASED, time);
+    }
+
+    private boolean offer(int event, long time) {
+        long w = written;
+        if (w - read == CAPACITY) return false;
+
+        int i = (int) (w % CAPACITY);
+        events[i] = event;
+        times[i] = time;
+        // publishes the event to the polling thread
+        written = w + 1;
+        return true;
+    }
+
+    /**
+     * Applies the events which happened until the given time and returns the buttons for the tick.
+     * Called by the consumer thread.
+     * @param until the time of the start of the tick in nanoseconds
+     * @return int the bitmask of the buttons which are held or were pressed since the last tick
+     */
+    public int poll(long until) {
+        int state = 0;
+
+        long r = read;
+        int c = clears.get();
+        if (c != appliedClears) {
+            appliedClears = c;
+            held = 0;
+            r = Math.max(r, clearedUntil);
+        }
+
+        long w = written;
+        for (; r < w; r++) {
+            int i = (int) (r % CAPACITY);
+            if (times[i] - until > 0) break;
+
+            int button = events[i] & ~RELEASED;
+            if ((events[i] & RELEASED) == 0) {
+                held |= button;
+                state |= button & ~TRIGGERS;
+            } else {
+                held &= ~button;
+                state |= button & TRIGGERS;
+            }
+        }
+        read = r;
+
+        return state | (held & ~TRIGGERS);
+    }
+
+    /**
+     * Forgets the held buttons and the events recorded so far at the next poll. Can be called from any thread.
+     */
+    public void clear() {
+        clearedUntil = written;
+        clears.incrementAndGet();
+    }
+}
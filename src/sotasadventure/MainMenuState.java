@@ -1,7 +1,6 @@
 package sotasadventure;
 
 import java.awt.Dimension;
-import java.awt.Image;
 import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -21,7 +20,7 @@ public class MainMenuState extends State {
 
     private StateMachine gameMode;
 
-    private Image background;
+    private ScaledBackground background;
 
     private ImageIcon logo;
     private ImageIcon startIcon;
@@ -65,18 +64,17 @@ public class MainMenuState extends State {
     @Override
     public void update(double elapsedTime) {}
 
-    @Override
-    public void render() {
-        repaint();
-    }
-
     @Override
     public void paintComponent(Graphics g) {
-        g.drawImage(Util.getScaledImage(background, (int) getSize().getWidth(), (int) getSize().getHeight()), 0, 0, null);
+        // nothing moves on the main menu, so it is painted only when Swing asks for it
+        background.draw(g, getWidth(), getHeight());
     }
 
     @Override
-    public void enter(String optional) {}
+    public void enter(String optional) {
+        AudioMixer.getShared().playMusic("/resources/music/mainmenu.wav");
+        repaint();
+    }
 
     @Override
     public void exit() {}
@@ -85,18 +83,9 @@ public class MainMenuState extends State {
      * Loads images.
      */
     private void loadResources() {
-        ImageIcon ii;
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/mainmenu-bg.png"));
-        background = ii.getImage();
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/logo.png"));
-        logo = new ImageIcon(Util.getScaledImage(ii.getImage(), 640, 267));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/start_button.png"));
-        startIcon = new ImageIcon(Util.getScaledImage(ii.getImage(), 200, 100));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/start_button_hover.png"));
-        startIconHover = new ImageIcon(Util.getScaledImage(ii.getImage(), 200, 100));
+        background = new ScaledBackground(Assets.getImage("/resources/images/mainmenu-bg.png"));
+        logo = new ImageIcon(Assets.getImage("/resources/images/logo.png", 640, 267));
+        startIcon = new ImageIcon(Assets.getImage("/resources/images/buttons/start_button.png", 200, 100));
+        startIconHover = new ImageIcon(Assets.getImage("/resources/images/buttons/start_button_hover.png", 200, 100));
     }
 }
@@ -1,14 +1,13 @@
 package sotasadventure;
 
-import java.awt.Image;
-import java.awt.Graphics;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-
-import javax.swing.ImageIcon;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * The class that represents the map.
+ * It only knows the tiles; MapRenderer draws them, so the game can run without a display.
  * @author Sota Nishiyama
  */
 public class Map {
@@ -24,31 +23,34 @@ public class Map {
     public static final int GROUND_HILL_LEFT = 11;
     public static final int WATER = 12;
 
-    private Image doorOpenImage;
-    private Image doorOpenTopImage;
-    private Image doorClosedImage;
-    private Image doorClosedTopImage;
-    private Image signImage;
-    private Image waterImage;
-
     private Stage currentStage;
     private int stageNum;
 
+    // the layers of the current map, and the same layers if they are dense, which are read without a virtual call
+    private TileLayer tiles;
+    private TileLayer visuals;
+    private DenseTileLayer denseTiles;
+    private DenseTileLayer denseVisuals;
+
+    // the tiles changed since the renderer last drew the map
+    private ConcurrentLinkedQueue<Long> changedTiles = new ConcurrentLinkedQueue<Long>();
+
     public HashMap<String, Stage> stages = new HashMap<String, Stage>();
 
     /**
-     * Stores all stages in a hash map and loads images.
+     * Stores all stages in a hash map.
      */
     public Map() {
-        stages.put("northAmerica", new Stage("northAmerica"));
-        stages.put("southAmerica", new Stage("southAmerica"));
-        stages.put("africa", new Stage("africa"));
-        stages.put("europe", new Stage("europe"));
-        stages.put("asia", new Stage("asia"));
-        stages.put("oceania", new Stage("oceania"));
-        stages.put("antarctica", new Stage("antarctica"));
-
-        loadResources();
+        try {
+            // the binary stage file is faster to load, but it may be missing while stages are being edited
+            if (Constants.STAGE_FORMAT.equals("binary") && Map.class.getResource("/resources/stages.bin") != null) {
+                stages = BinaryStageLoader.load("/resources/stages.bin");
+            } else {
+                stages = StageLoader.load("/resources/stages.properties");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -59,6 +61,7 @@ public class Map {
         currentStage = stages.get(stageName);
         currentStage.name = stageName;
         stageNum = 0;
+        setLayers();
     }
 
     /**
@@ -66,6 +69,56 @@ public class Map {
      */
     public void next() {
         stageNum++;
+        setLayers();
+    }
+
+    /**
+     * Caches the layers of the current map.
+     */
+    private void setLayers() {
+        tiles = currentStage.map[stageNum];
+        visuals = currentStage.visuals[stageNum];
+        denseTiles = tiles instanceof DenseTileLayer ? (DenseTileLayer) tiles : null;
+        denseVisuals = visuals instanceof DenseTileLayer ? (DenseTileLayer) visuals : null;
+    }
+
+    /**
+     * Discards the chunks of the large maps of the current stage which have not been read since the last call,
+     * so that only the chunks the sprites and the screen are on stay in memory.
+     */
+    public void discardUnusedChunks() {
+        for (int k = 0; k < currentStage.map.length; k++) {
+            if (currentStage.map[k] instanceof ChunkedTileLayer) {
+                ((ChunkedTileLayer) currentStage.map[k]).discardUnused();
+            }
+            if (currentStage.visuals[k] instanceof ChunkedTileLayer) {
+                ((ChunkedTileLayer) currentStage.visuals[k]).discardUnused();
+            }
+        }
+    }
+
+    /**
+     * Checks if the current stage has a map after the current one.
+     * @return boolean true if there is a next map
+     */
+    public boolean hasNext() {
+        return stageNum + 1 < currentStage.map.length;
+    }
+
+    /**
+     * Returns the current stage.
+     * @return Stage the current stage
+     */
+    public Stage getStage() {
+        return currentStage;
+    }
+
+    /**
+     * Returns the number of the current map in the current stage.
+     * @return int the number of the current map
+     */
+    public int getStageNum() {
+        return stageNum;
     }
 
     /**
@@ -84,9 +137,27 @@ public class Map {
      * @return int the type of the tile
      */
     public int getTile(int x, int y) {
-        if (x < 0 || x >= currentStage.map[stageNum][0].length ||
-            y < 0 || y >= currentStage.map[stageNum].length) return GROUND;
-        return currentStage.map[stageNum][y][x];
+        DenseTileLayer dense = denseTiles;
+        return dense != null ? dense.get(x, y) : tiles.get(x, y);
+    }
+
+    /**
+     * Changes the type of the given tile.
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @param type the new type of the tile
+     */
+    public void setTile(int x, int y, int type) {
+        currentStage.setTile(stageNum, x, y, type);
+        changedTiles.add(((long) y << 32) | (x & 0xffffffffL));
+    }
+
+    /**
+     * Returns a tile changed since the last call. Called by the renderer.
+     * @return Long the tile, with y in the upper 32 bits and x in the lower ones, or null if no tiles have changed
+     */
+    public Long pollChangedTile() {
+        return changedTiles.poll();
     }
 
     /**
@@ -94,14 +165,10 @@ public class Map {
      * @return Vector the position of the starting point
      */
     public Vector getStartingPoint() {
-        for (int i = 0; i < currentStage.map[stageNum].length; i++) {
-            for (int j = 0; j < currentStage.map[stageNum][i].length; j++) {
-                if (currentStage.map[stageNum][i][j] == START || currentStage.map[stageNum][i][j] == DOOR_OPENED) {
-                    return new Vector(j * Constants.TILE_SIZE, i * Constants.TILE_SIZE);
-                }
-            }
+        if (currentStage.startXs[stageNum] == -1) {
+            return new Vector();
         }
-        return new Vector();
+        return new Vector(currentStage.startXs[stageNum] * Constants.TILE_SIZE, currentStage.startYs[stageNum] * Constants.TILE_SIZE);
     }
 
     /**
@@ -109,14 +176,10 @@ public class Map {
      * @return Vector the position of the enemy ship. If there is no space ship in the stage, returns an empty array.
      */
     public Vector getSpaceShipPosition() {
-        for (int i = 0; i < currentStage.map[stageNum].length; i++) {
-            for (int j = 0; j < currentStage.map[stageNum][i].length; j++) {
-                if (currentStage.map[stageNum][i][j] == SHIP) {
-                    return new Vector(j * Constants.TILE_SIZE, i * Constants.TILE_SIZE);
-                }
-            }
+        if (currentStage.shipXs[stageNum] == -1) {
+            return new Vector();
         }
-        return new Vector();
+        return new Vector(currentStage.shipXs[stageNum] * Constants.TILE_SIZE, currentStage.shipYs[stageNum] * Constants.TILE_SIZE);
     }
 
     /**
@@ -150,35 +213,48 @@ public class Map {
      * @return ArrayList<Enemy> an enemy arraylist
      */
     public ArrayList<Enemy> getEnemies(int width, int height) {
-        ArrayList<Enemy> enemies = new ArrayList<Enemy>();
-
-        for (int i = 0; i < currentStage.map[stageNum].length; i++) {
-            for (int j = 0; j < currentStage.map[stageNum][i].length; j++) {
-                if (currentStage.map[stageNum][i][j] == ENEMY) {
-                    Enemy enemy = new Enemy(width, height);
-                    enemy.init(j * Constants.TILE_SIZE, i * Constants.TILE_SIZE, getEnemySpeed());
-                    enemies.add(enemy);
-                }
-            }
+        return getEnemies(stageNum, width, height);
+    }
+
+    /**
+     * Returns a list of enemies in the given map of the current stage.
+     * @param stageNum the number of the map
+     * @param width the width of enemies
+     * @param height the height of enemies
+     * @return ArrayList<Enemy> an enemy arraylist
+     */
+    public ArrayList<Enemy> getEnemies(int stageNum, int width, int height) {
+        int[] tiles = currentStage.enemies[stageNum];
+        ArrayList<Enemy> enemies = new ArrayList<Enemy>(tiles.length / 2);
+
+        for (int k = 0; k < tiles.length; k += 2) {
+            Enemy enemy = new Enemy(width, height);
+            enemy.init(tiles[k] * Constants.TILE_SIZE, tiles[k + 1] * Constants.TILE_SIZE, getEnemySpeed());
+            enemies.add(enemy);
         }
         return enemies;
     }
 
     /**
-     * Returns a list of coins in the stage.
-     * @return ArrayList<int[][]> an arraylist of positions of coins
+     * Removes all pickups and puts the coins of the current map.
+     * @param pickups the pickups
      */
-    public ArrayList<int[]> getCoins() {
-        ArrayList<int[]> coins = new ArrayList<int[]>();
-
-        for (int i = 0; i < currentStage.map[stageNum].length; i++) {
-            for (int j = 0; j < currentStage.map[stageNum][i].length; j++) {
-                if (currentStage.map[stageNum][i][j] == COIN) {
-                    coins.add(new int[] {j * Constants.TILE_SIZE, i * Constants.TILE_SIZE});
-                }
-            }
+    public void addCoins(Pickups pickups) {
+        addCoins(stageNum, pickups);
+    }
+
+    /**
+     * Removes all pickups and puts the coins of the given map of the current stage.
+     * @param stageNum the number of the map
+     * @param pickups the pickups
+     */
+    public void addCoins(int stageNum, Pickups pickups) {
+        pickups.reset(currentStage.map[stageNum].getWidth(), currentStage.map[stageNum].getHeight());
+
+        int[] tiles = currentStage.coins[stageNum];
+        for (int k = 0; k < tiles.length; k += 2) {
+            pickups.addCoin(tiles[k], tiles[k + 1]);
         }
-        return coins;
     }
 
     /**
@@ -194,8 +270,7 @@ public class Map {
      * @return int the width of the map
      */
     public int getWidth() {
-        return currentStage.map[stageNum][0].length * Constants.TILE_SIZE;
-
+        return tiles.getWidth() * Constants.TILE_SIZE;
     }
 
     /**
@@ -203,8 +278,7 @@ public class Map {
      * @return int the height of the map
      */
     public int getHeight() {
-        return currentStage.map[stageNum].length * Constants.TILE_SIZE;
-
+        return tiles.getHeight() * Constants.TILE_SIZE;
     }
 
     /**
@@ -213,7 +287,7 @@ public class Map {
      * @return boolean true if the given tile is out of the map
      */
     public boolean isOutOfMap(int y) {
-        if (y >= currentStage.map[stageNum].length) {
+        if (y >= tiles.getHeight()) {
             return true;
         }
         return false;
@@ -226,107 +300,7 @@ public class Map {
      * @return boolean true if the given tile is water
      */
     public boolean isWater(int x, int y) {
-        if (getTile(x, y) != GROUND && (getTile(x, y) == WATER || (getTile(x - 1, y) == WATER) || getTile(x + 1, y) == WATER || getTile(x, y - 1) == WATER)) {
-            return true;
-        } else {
-            return false;
-        }
-    }
-
-    /**
-     * Draws the map.
-     * @param g Graphics
-     * @param mapX the x coordinate of the map
-     * @param mapY the y coordinate of the map
-     */
-    public void draw(Graphics g, int mapX, int mapY) {
-        for (int i = 0; i < currentStage.map[stageNum].length; i++) {
-            if (i * Constants.TILE_SIZE + mapY <= -Constants.TILE_SIZE || i * Constants.TILE_SIZE + mapY > getHeight()) continue;
-
-            for (int j = 0; j < currentStage.map[stageNum][i].length; j++) {
-                if (j * Constants.TILE_SIZE + mapX <= -Constants.TILE_SIZE || j * Constants.TILE_SIZE + mapX > getWidth()) continue;
-
-                if (isWater(j, i)) {
-                    g.drawImage(waterImage, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                }
-
-                switch (currentStage.map[stageNum][i][j]) {
-                    case GROUND:
-                    if (i > 0 && currentStage.map[stageNum][i - 1][j] != GROUND && currentStage.map[stageNum][i - 1][j] != GROUND_HILL_LEFT && currentStage.map[stageNum][i - 1][j] != GROUND_HILL_RIGHT) { // surface
-
-                        if (j > 0 && currentStage.map[stageNum][i][j - 1] != GROUND && currentStage.map[stageNum][i][j - 1] != GROUND_HILL_LEFT &&
-                            j < currentStage.map[stageNum][i].length - 1 && currentStage.map[stageNum][i][j + 1] != GROUND && currentStage.map[stageNum][i][j + 1] != GROUND_HILL_RIGHT) { // both
-                            g.drawImage(currentStage.surface, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                        } else if (j > 0 && currentStage.map[stageNum][i][j - 1] != GROUND && currentStage.map[stageNum][i][j - 1] != GROUND_HILL_LEFT) { // left edge
-                            g.drawImage(currentStage.left, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                        } else if (j < currentStage.map[stageNum][i].length - 1 && currentStage.map[stageNum][i][j + 1] != GROUND && currentStage.map[stageNum][i][j + 1] != GROUND_HILL_RIGHT) { // right edge
-                            g.drawImage(currentStage.right, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                        } else {
-                            g.drawImage(currentStage.mid, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                        }
-
-                    } else {
-
-                        if (i > 0 && currentStage.map[stageNum][i - 1][j] == GROUND_HILL_RIGHT) {
-                            g.drawImage(currentStage.hillRight2, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                        } else if (i > 0 && currentStage.map[stageNum][i - 1][j] == GROUND_HILL_LEFT) {
-                            g.drawImage(currentStage.hillLeft2, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                        } else {
-                            g.drawImage(currentStage.center, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                        }
-
-                    }
-
-                    break;
-
-                    case START:
-                    g.drawImage(signImage, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                    break;
-
-                    case DOOR_CLOSED:
-                    g.drawImage(doorClosedImage, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                    g.drawImage(doorClosedTopImage, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE - Constants.TILE_SIZE + mapY, null);
-                    break;
-
-                    case DOOR_OPENED:
-                    g.drawImage(doorOpenImage, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                    g.drawImage(doorOpenTopImage, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE - Constants.TILE_SIZE + mapY, null);
-                    break;
-
-                    case GROUND_HILL_RIGHT:
-                    g.drawImage(currentStage.hillRight, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                    break;
-
-                    case GROUND_HILL_LEFT:
-                    g.drawImage(currentStage.hillLeft, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
-                    break;
-                }
-            }
-        }
-    }
-
-    /**
-     * Loads images of the map.
-     */
-    private void loadResources() {
-        ImageIcon ii;
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/door_closedMid.png"));
-        doorClosedImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/door_closedTop.png"));
-        doorClosedTopImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/door_openMid.png"));
-        doorOpenImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/door_openTop.png"));
-        doorOpenTopImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/sign.png"));
-        signImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/liquidWater.png"));
-        waterImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
+        DenseTileLayer dense = denseVisuals;
+        return ((dense != null ? dense.get(x, y) : visuals.get(x, y)) & Stage.WATER_OVERLAY) != 0;
     }
 }
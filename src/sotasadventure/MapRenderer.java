@@ -0,0 +1,265 @@
+package sotasadventure;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.HashMap;
+
+/**
+ * The class that draws maps.
+ * Maps only know which tiles they have; this class loads the images of the tiles of every stage
+ * and draws them through a cache of pre-rendered chunks.
+ * While a map is drawn, the chunks of the next map around its starting point are rendered a few a frame,
+ * so that entering a door does not render the whole screen at once.
+ * Both caches keep as many chunks as the area drawn needs, and follow it when it is resized.
+ *
+ * @author Sota Nishiyama
+ */
+public class MapRenderer {
+    private Map map;
+
+    private Image doorOpenImage;
+    private Image doorOpenTopImage;
+    private Image doorClosedImage;
+    private Image doorClosedTopImage;
+    private Image signImage;
+    private Image waterImage;
+
+    // the images of the ground of each stage, indexed by the visuals of Stage
+    private HashMap<String, Image[]> groundImages = new HashMap<String, Image[]>();
+
+    // the number of chunks of the next map rendered a frame
+    private static final int PREPARED_CHUNKS_PER_FRAME = 1;
+
+    private TileChunkCache chunks = new TileChunkCache(this);
+    private TileChunkCache nextChunks = new TileChunkCache(this);
+
+    /**
+     * Loads the images of the tiles of every stage of the map.
+     * @param map the map whose changed tiles are drawn again
+     */
+    public MapRenderer(Map map) {
+        this.map = map;
+
+        loadResources();
+    }
+
+    /**
+     * Draws a map using the pre-rendered chunks of tiles.
+     * The map is given by the caller, so that the renderer can draw the map of a snapshot
+     * while the game loop moves to the next one.
+     * @param g Graphics
+     * @param stage the stage to draw
+     * @param stageNum the number of the map in the stage
+     * @param mapX the x coordinate of the map
+     * @param mapY the y coordinate of the map
+     * @param width the width of the area to draw
+     * @param height the height of the area to draw
+     */
+    public void draw(Graphics g, Stage stage, int stageNum, int mapX, int mapY, int width, int height) {
+        // the chunks of the next map become the current ones when its door is entered
+        if (!chunks.isOf(stage, stageNum) && nextChunks.isOf(stage, stageNum)) {
+            TileChunkCache previous = chunks;
+            chunks = nextChunks;
+            nextChunks = previous;
+        }
+
+        chunks.setScreenSize(width, height);
+        nextChunks.setScreenSize(width, height);
+
+        Long tile;
+        while ((tile = map.pollChangedTile()) != null) {
+            chunks.invalidate((int) (long) tile, (int) (tile >> 32));
+        }
+        chunks.sync(stage, stageNum);
+
+        int mapWidth = stage.map[stageNum].getWidth() * Constants.TILE_SIZE;
+        int mapHeight = stage.map[stageNum].getHeight() * Constants.TILE_SIZE;
+
+        int firstX = Math.max(-mapX, 0) / TileChunkCache.CHUNK_PIXELS;
+        int firstY = Math.max(-mapY, 0) / TileChunkCache.CHUNK_PIXELS;
+        int lastX = Math.min(width - mapX, mapWidth) / TileChunkCache.CHUNK_PIXELS;
+        int lastY = Math.min(height - mapY, mapHeight) / TileChunkCache.CHUNK_PIXELS;
+
+        for (int i = firstY; i <= lastY; i++) {
+            for (int j = firstX; j <= lastX; j++) {
+                Image chunk = chunks.get(j, i);
+                if (chunk != null) {
+                    g.drawImage(chunk, j * TileChunkCache.CHUNK_PIXELS + mapX, i * TileChunkCache.CHUNK_PIXELS + mapY, null);
+                }
+            }
+        }
+
+        if (stageNum + 1 < stage.map.length) {
+            prepare(stage, stageNum + 1, width, height);
+        }
+    }
+
+    /**
+     * Renders a few of the chunks of a map which are seen when Sota is at its starting point.
+     */
+    private void prepare(Stage stage, int stageNum, int width, int height) {
+        nextChunks.sync(stage, stageNum);
+        if (stage.startXs[stageNum] == -1) return;
+
+        int mapWidth = stage.map[stageNum].getWidth() * Constants.TILE_SIZE;
+        int mapHeight = stage.map[stageNum].getHeight() * Constants.TILE_SIZE;
+        int mapX = getMapX(stage.startXs[stageNum] * Constants.TILE_SIZE, mapWidth, width);
+        int mapY = getMapY(stage.startYs[stageNum] * Constants.TILE_SIZE, mapHeight, height);
+
+        int firstX = Math.max(-mapX, 0) / TileChunkCache.CHUNK_PIXELS;
+        int firstY = Math.max(-mapY, 0) / TileChunkCache.CHUNK_PIXELS;
+        int lastX = Math.min(width - mapX, mapWidth) / TileChunkCache.CHUNK_PIXELS;
+        int lastY = Math.min(height - mapY, mapHeight) / TileChunkCache.CHUNK_PIXELS;
+
+        int prepared = 0;
+        for (int i = firstY; i <= lastY; i++) {
+            for (int j = firstX; j <= lastX; j++) {
+                if (nextChunks.prepare(j, i) && ++prepared == PREPARED_CHUNKS_PER_FRAME) return;
+            }
+        }
+    }
+
+    /**
+     * Returns the x coordinate of a map which keeps Sota in the middle of the screen without showing outside of the map.
+     * @param sotaX the x coordinate of Sota
+     * @param mapWidth the width of the map
+     * @param width the width of the screen
+     * @return int the x coordinate of the map
+     */
+    public static int getMapX(int sotaX, int mapWidth, int width) {
+        if (sotaX < width / 2) {
+            return 0;
+        } else if (sotaX > mapWidth - width / 2) {
+            return width - mapWidth;
+        } else {
+            return width / 2 - sotaX;
+        }
+    }
+
+    /**
+     * Returns the y coordinate of a map which keeps Sota in the middle of the screen without showing outside of the map.
+     * The bottom row of the map is not shown, since it is under the ground.
+     * @param sotaY the y coordinate of Sota
+     * @param mapHeight the height of the map
+     * @param height the height of the screen
+     * @return int the y coordinate of the map
+     */
+    public static int getMapY(int sotaY, int mapHeight, int height) {
+        if (sotaY < height / 2) {
+            return 0;
+        } else if (sotaY > (mapHeight - Constants.TILE_SIZE) - height / 2) {
+            return height - (mapHeight - Constants.TILE_SIZE);
+        } else {
+            return height / 2 - sotaY;
+        }
+    }
+
+    /**
+     * Draws the tiles of a map in the given range one by one.
+     * @param g Graphics
+     * @param stage the stage to draw
+     * @param stageNum the number of the map in the stage
+     * @param mapX the x coordinate of the map
+     * @param mapY the y coordinate of the map
+     * @param firstX the x coordinate of the first tile to draw
+     * @param firstY the y coordinate of the first tile to draw
+     * @param lastX the x coordinate next to the last tile to draw
+     * @param lastY the y coordinate next to the last tile to draw
+     * @return int the number of tiles drawn
+     */
+    public int drawTiles(Graphics g, Stage stage, int stageNum, int mapX, int mapY, int firstX, int firstY, int lastX, int lastY) {
+        Image[] ground = getGroundImages(stage.name);
+        int drawn = 0;
+
+        TileLayer visuals = stage.visuals[stageNum];
+        for (int i = Math.max(firstY, 0); i < Math.min(lastY, visuals.getHeight()); i++) {
+            for (int j = Math.max(firstX, 0); j < Math.min(lastX, visuals.getWidth()); j++) {
+                if (drawTile(g, ground, visuals.get(j, i), j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY)) {
+                    drawn++;
+                }
+            }
+        }
+        return drawn;
+    }
+
+    /**
+     * Draws a tile.
+     * @return boolean true if anything was drawn
+     */
+    private boolean drawTile(Graphics g, Image[] ground, int visual, int x, int y) {
+        if ((visual & Stage.WATER_OVERLAY) != 0) {
+            g.drawImage(waterImage, x, y, null);
+        }
+
+        switch (visual & Stage.TILE_MASK) {
+            case Stage.TILE_SURFACE:
+            case Stage.TILE_LEFT:
+            case Stage.TILE_RIGHT:
+            case Stage.TILE_MID:
+            case Stage.TILE_CENTER:
+            case Stage.TILE_HILL_RIGHT:
+            case Stage.TILE_HILL_RIGHT2:
+            case Stage.TILE_HILL_LEFT:
+            case Stage.TILE_HILL_LEFT2:
+            g.drawImage(ground[visual & Stage.TILE_MASK], x, y, null);
+            break;
+
+            case Stage.TILE_SIGN:
+            g.drawImage(signImage, x, y, null);
+            break;
+
+            case Stage.TILE_DOOR_CLOSED:
+            g.drawImage(doorClosedImage, x, y, null);
+            g.drawImage(doorClosedTopImage, x, y - Constants.TILE_SIZE, null);
+            break;
+
+            case Stage.TILE_DOOR_OPENED:
+            g.drawImage(doorOpenImage, x, y, null);
+            g.drawImage(doorOpenTopImage, x, y - Constants.TILE_SIZE, null);
+            break;
+
+            default:
+            return visual != 0;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the images of the ground of a stage, loading them if they are not loaded yet.
+     */
+    private Image[] getGroundImages(String name) {
+        Image[] images = groundImages.get(name);
+        if (images != null) return images;
+
+        String path = "/resources/images/Tiles/" + name + "/";
+        images = new Image[Stage.TILE_HILL_LEFT2 + 1];
+        images[Stage.TILE_SURFACE] = Assets.getImage(path + "surface.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        images[Stage.TILE_CENTER] = Assets.getImage(path + "center.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        images[Stage.TILE_RIGHT] = Assets.getImage(path + "right.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        images[Stage.TILE_LEFT] = Assets.getImage(path + "right.png", Constants.TILE_SIZE, Constants.TILE_SIZE, true);
+        images[Stage.TILE_MID] = Assets.getImage(path + "mid.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        images[Stage.TILE_HILL_RIGHT] = Assets.getImage(path + "hillRight.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        images[Stage.TILE_HILL_RIGHT2] = Assets.getImage(path + "hillRight2.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        images[Stage.TILE_HILL_LEFT] = Assets.getImage(path + "hillRight.png", Constants.TILE_SIZE, Constants.TILE_SIZE, true);
+        images[Stage.TILE_HILL_LEFT2] = Assets.getImage(path + "hillRight2.png", Constants.TILE_SIZE, Constants.TILE_SIZE, true);
+        groundImages.put(name, images);
+        return images;
+    }
+
+    /**
+     * Loads images of the tiles.
+     */
+    private void loadResources() {
+        doorClosedImage = Assets.getImage("/resources/images/Tiles/door_closedMid.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        doorClosedTopImage = Assets.getImage("/resources/images/Tiles/door_closedTop.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        doorOpenImage = Assets.getImage("/resources/images/Tiles/door_openMid.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        doorOpenTopImage = Assets.getImage("/resources/images/Tiles/door_openTop.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        signImage = Assets.getImage("/resources/images/Tiles/sign.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        waterImage = Assets.getImage("/resources/images/Tiles/liquidWater.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+
+        // load the images of every stage now rather than on the first frame of a stage
+        for (String name: map.stages.keySet()) {
+            getGroundImages(name);
+        }
+    }
+}
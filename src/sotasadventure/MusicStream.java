@@ -0,0 +1,182 @@
+package sotasadventure;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * The class that streams a music track for the mixer.
+ * A decoding thread reads the file in small chunks, converts it into the format of the mixer,
+ * and puts it into a ring buffer which the mixer reads from. Only the ring buffer is kept in memory,
+ * however long the track is. The track loops until the stream is closed.
+ * If the decoding thread falls behind, the mixer plays silence instead of waiting.
+ *
+ * @author Sota Nishiyama
+ */
+public class MusicStream implements Runnable {
+    // about 370 ms of music
+    private static final int CAPACITY = 16384;
+    private static final int CHUNK_BYTES = 4096;
+
+    private final String path;
+
+    // interleaved stereo samples; written by the decoding thread and read by the mixer
+    private final short[] ring = new short[CAPACITY * 2];
+    private volatile long written;
+    private volatile long read;
+
+    private volatile boolean closed;
+
+    // used only by the decoding thread
+    private int[] previous = new int[2];
+    private int[] current = new int[2];
+    private double position;
+    private boolean started;
+
+    /**
+     * Starts decoding a track on a new thread.
+     * @param path the path of the track
+     */
+    public MusicStream(String path) {
+        this.path = path;
+
+        Thread thread = new Thread(this, "music-decoder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the path of the track.
+     * @return String the path of the track
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Adds the next frames of the track to the mix. Called by the mixer.
+     * @param mix the interleaved stereo samples to add to
+     * @param frames the number of frames
+     * @param gain the volume at the first frame
+     * @param gainStep how much the volume changes per frame
+     */
+    public void mixInto(int[] mix, int frames, double gain, double gainStep) {
+        long r = read;
+        int available = (int) Math.min(frames, written - r);
+
+        for (int i = 0; i < available; i++) {
+            int j = (int) ((r + i) % CAPACITY) * 2;
+            mix[i * 2] += (int) (ring[j] * gain);
+            mix[i * 2 + 1] += (int) (ring[j + 1] * gain);
+            gain += gainStep;
+        }
+        read = r + available;
+    }
+
+    /**
+     * Stops decoding the track. This method can be called from any thread.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public void run() {
+        byte[] chunk = new byte[CHUNK_BYTES];
+
+        while (!closed) {
+            InputStream resource = MusicStream.class.getResourceAsStream(path);
+            if (resource == null) return;
+
+            long before = written;
+
+            try {
+                AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(resource));
+                try {
+                    AudioFormat format = source.getFormat();
+                    int channels = format.getChannels();
+                    float rate = format.getSampleRate();
+                    AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, 16, channels, channels * 2, rate, false);
+                    AudioInputStream input = AudioSystem.getAudioInputStream(pcm, source);
+
+                    int frameBytes = channels * 2;
+                    int filled = 0;
+                    int n;
+                    while (!closed && (n = input.read(chunk, filled, chunk.length - filled)) != -1) {
+                        filled += n;
+                        int frames = filled / frameBytes;
+                        for (int f = 0; f < frames && !closed; f++) {
+                            int left = sample(chunk, f * channels);
+                            int right = channels > 1 ? sample(chunk, f * channels + 1) : left;
+                            resample(left, right, rate / AudioMixer.SAMPLE_RATE);
+                        }
+
+                        // keep the bytes of a frame cut by the end of the chunk
+                        int rest = filled - frames * frameBytes;
+                        System.arraycopy(chunk, frames * frameBytes, chunk, 0, rest);
+                        filled = rest;
+                    }
+                } finally {
+                    source.close();
+                }
+            } catch (UnsupportedAudioFileException e) {
+                e.printStackTrace();
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            // an empty track would be reopened forever
+            if (written == before) return;
+        }
+    }
+
+    /**
+     * Takes a frame of the source and writes the frames of the mixer which come before it,
+     * interpolating between it and the frame before.
+     */
+    private void resample(int left, int right, double step) {
+        previous[0] = current[0];
+        previous[1] = current[1];
+        current[0] = left;
+        current[1] = right;
+        if (!started) {
+            started = true;
+            return;
+        }
+
+        while (position < 1 && !closed) {
+            put((int) Math.round(previous[0] + (current[0] - previous[0]) * position),
+                (int) Math.round(previous[1] + (current[1] - previous[1]) * position));
+            position += step;
+        }
+        position -= 1;
+    }
+
+    /**
+     * Writes a frame into the ring buffer, waiting while it is full.
+     */
+    private void put(int left, int right) {
+        long w = written;
+        while (w - read == CAPACITY) {
+            if (closed) return;
+            LockSupport.parkNanos(2000000);
+        }
+
+        int j = (int) (w % CAPACITY) * 2;
+        ring[j] = (short) left;
+        ring[j + 1] = (short) right;
+        written = w + 1;
+    }
+
+    private static int sample(byte[] data, int i) {
+        return (short) ((data[i * 2] & 0xff) | (data[i * 2 + 1] << 8));
+    }
+}
@@ -0,0 +1,227 @@
+package sotasadventure;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class that keeps the coins and the gems of a map indexed by tile.
+ * Coins sit on tiles, so they are kept in a bitset with a bit for each tile of the map.
+ * Gems drop wherever enemies die, so they are kept in a pool of slots, and each cell of GEM_CELL_SIZE tiles
+ * square has a list of the gems whose centers are in it. Sota only touches the tiles under him, so picking up
+ * is done without looking at most of the other pickups, and a pickup is removed in constant time.
+ *
+ * @author Sota Nishiyama
+ */
+public class Pickups {
+    // the width and the height of a cell of gems in tiles, which keeps the lists of gems small on large maps
+    static final int GEM_CELL_SIZE = 8;
+
+    private int columns;
+    private int rows;
+    private int cellColumns;
+
+    // every change of the coins of any pickups gets a new version, so that snapshots copy the coins only when they change
+    private static final AtomicLong coinVersions = new AtomicLong();
+
+    private long[] coins = new long[0];
+    private int coinCount;
+    private long coinVersion;
+
+    // the slots of gems; a slot is either in the list of a cell or in the list of free slots
+    private int[] gemXs = new int[16];
+    private int[] gemYs = new int[16];
+    private int[] nextGems = new int[16];
+    // the cell of each slot, or -1 if the slot is free
+    private int[] gemCells = new int[16];
+    private int slotCount;
+    private int freeGem = -1;
+    private int gemCount;
+
+    // the first gem of each cell
+    private int[] firstGems = new int[0];
+
+    /**
+     * Removes all pickups and resizes the grid to a map.
+     * @param columns the width of the map in tiles
+     * @param rows the height of the map in tiles
+     */
+    public void reset(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+
+        int words = (columns * rows + 63) / 64;
+        if (coins.length < words) {
+            coins = new long[words];
+        } else {
+            Arrays.fill(coins, 0);
+        }
+        coinCount = 0;
+        coinVersion = coinVersions.incrementAndGet();
+
+        cellColumns = (columns + GEM_CELL_SIZE - 1) / GEM_CELL_SIZE;
+        int cells = cellColumns * ((rows + GEM_CELL_SIZE - 1) / GEM_CELL_SIZE);
+        if (firstGems.length < cells) {
+            firstGems = new int[cells];
+        }
+        Arrays.fill(firstGems, -1);
+        slotCount = 0;
+        freeGem = -1;
+        gemCount = 0;
+    }
+
+    /**
+     * Puts a coin on a tile.
+     * @param tileX the x coordinate of the tile
+     * @param tileY the y coordinate of the tile
+     */
+    public void addCoin(int tileX, int tileY) {
+        int tile = tileY * columns + tileX;
+        if ((coins[tile >> 6] & 1L << tile) == 0) {
+            coins[tile >> 6] |= 1L << tile;
+            coinCount++;
+            coinVersion = coinVersions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops a gem.
+     * @param x the x coordinate of the gem
+     * @param y the y coordinate of the gem
+     */
+    public void addGem(int x, int y) {
+        int slot;
+        if (freeGem != -1) {
+            slot = freeGem;
+            freeGem = nextGems[slot];
+        } else {
+            if (slotCount == gemXs.length) {
+                int length = gemXs.length * 2;
+                gemXs = Arrays.copyOf(gemXs, length);
+                gemYs = Arrays.copyOf(gemYs, length);
+                nextGems = Arrays.copyOf(nextGems, length);
+                gemCells = Arrays.copyOf(gemCells, length);
+            }
+            slot = slotCount++;
+        }
+
+        int cell = getTileY(y + Constants.TILE_SIZE / 2) / GEM_CELL_SIZE * cellColumns + getTileX(x + Constants.TILE_SIZE / 2) / GEM_CELL_SIZE;
+        gemXs[slot] = x;
+        gemYs[slot] = y;
+        gemCells[slot] = cell;
+        nextGems[slot] = firstGems[cell];
+        firstGems[cell] = slot;
+        gemCount++;
+    }
+
+    /**
+     * Removes the coins whose centers are in the given box.
+     * @param x the x coordinate of the box
+     * @param y the y coordinate of the box
+     * @param size the width and the height of the box
+     * @return int the number of coins removed
+     */
+    public int collectCoins(int x, int y, int size) {
+        int collected = 0;
+        for (int i = getTileY(y); i <= getTileY(y + size); i++) {
+            for (int j = getTileX(x); j <= getTileX(x + size); j++) {
+                int tile = i * columns + j;
+                if ((coins[tile >> 6] & 1L << tile) == 0) continue;
+
+                int centerX = j * Constants.TILE_SIZE + Constants.TILE_SIZE / 2;
+                int centerY = i * Constants.TILE_SIZE + Constants.TILE_SIZE / 2;
+                if (x <= centerX && centerX <= x + size && y <= centerY && centerY <= y + size) {
+                    coins[tile >> 6] &= ~(1L << tile);
+                    coinCount--;
+                    collected++;
+                    coinVersion = coinVersions.incrementAndGet();
+                }
+            }
+        }
+        return collected;
+    }
+
+    /**
+     * Removes the gems whose centers are in the given box.
+     * @param x the x coordinate of the box
+     * @param y the y coordinate of the box
+     * @param size the width and the height of the box
+     * @return int the number of gems removed
+     */
+    public int collectGems(int x, int y, int size) {
+        int collected = 0;
+        for (int i = getTileY(y) / GEM_CELL_SIZE; i <= getTileY(y + size) / GEM_CELL_SIZE; i++) {
+            for (int j = getTileX(x) / GEM_CELL_SIZE; j <= getTileX(x + size) / GEM_CELL_SIZE; j++) {
+                int cell = i * cellColumns + j;
+                int previous = -1;
+                int slot = firstGems[cell];
+                while (slot != -1) {
+                    int next = nextGems[slot];
+                    int centerX = gemXs[slot] + Constants.TILE_SIZE / 2;
+                    int centerY = gemYs[slot] + Constants.TILE_SIZE / 2;
+
+                    if (x <= centerX && centerX <= x + size && y <= centerY && centerY <= y + size) {
+                        // unlink the gem and free its slot
+                        if (previous == -1) {
+                            firstGems[cell] = next;
+                        } else {
+                            nextGems[previous] = next;
+                        }
+                        nextGems[slot] = freeGem;
+                        gemCells[slot] = -1;
+                        freeGem = slot;
+                        gemCount--;
+                        collected++;
+                    } else {
+                        previous = slot;
+                    }
+                    slot = next;
+                }
+            }
+        }
+        return collected;
+    }
+
+    /**
+     * Returns the number of coins left.
+     * @return int the number of coins
+     */
+    public int getCoinCount() {
+        return coinCount;
+    }
+
+    /**
+     * Returns the number of gems left.
+     * @return int the number of gems
+     */
+    public int getGemCount() {
+        return gemCount;
+    }
+
+    /**
+     * Copies the coins and the gems into a snapshot.
+     * @param snapshot the snapshot
+     */
+    public void fillSnapshot(WorldSnapshot snapshot) {
+        snapshot.setCoins(coins, columns, rows, coinVersion);
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (gemCells[slot] != -1) {
+                snapshot.addGem(gemXs[slot], gemYs[slot]);
+            }
+        }
+    }
+
+    /**
+     * Returns the column of the given x coordinate, treating the columns out of the map as the nearest ones.
+     */
+    private int getTileX(int x) {
+        return Math.max(0, Math.min(Math.floorDiv(x, Constants.TILE_SIZE), columns - 1));
+    }
+
+    /**
+     * Returns the row of the given y coordinate, treating the rows out of the map as the nearest ones.
+     */
+    private int getTileY(int y) {
+        return Math.max(0, Math.min(Math.floorDiv(y, Constants.TILE_SIZE), rows - 1));
+    }
+}
@@ -0,0 +1,159 @@
+package sotasadventure;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * The class that measures how long each phase of a tick or a render takes.
+ * The times of the last frames are kept in a ring buffer allocated up front, so profiling allocates nothing
+ * and costs a call to System.nanoTime per phase. Only one thread may measure frames,
+ * but any thread may read the times, which may then be a frame behind.
+ *
+ * @author Sota Nishiyama
+ */
+public class Profiler {
+    // the phases of a tick
+    public static final int INPUT = 0;
+    public static final int MOVE = 1;
+    public static final int WALLS = 2;
+    public static final int ENEMIES = 3;
+    public static final int BULLETS = 4;
+    public static final int PICKUPS = 5;
+    public static final int SNAPSHOT = 6;
+    public static final String[] TICK_PHASES = {"input", "move", "walls", "enemies", "bullets", "pickups", "snapshot"};
+
+    // the phases of a render
+    public static final int BACKGROUND = 0;
+    public static final int MAP = 1;
+    public static final int SPRITES = 2;
+    public static final int HUD = 3;
+    public static final String[] RENDER_PHASES = {"background", "map", "sprites", "hud"};
+
+    // the number of frames kept, which is a power of 2
+    private static final int FRAMES = 1024;
+
+    private final String name;
+    private final String[] phases;
+    // the number of columns of a frame: the phases and the whole frame
+    private final int columns;
+
+    private final long[] times;
+    // the number of frames finished
+    private volatile long count;
+
+    // used only by the measuring thread
+    private long start;
+    private long last;
+
+    // used to sort the times of a column
+    private final long[] sorted = new long[FRAMES];
+
+    /**
+     * Allocates the ring buffer.
+     * @param name the name of what is profiled
+     * @param phases the names of the phases
+     */
+    public Profiler(String name, String[] phases) {
+        this.name = name;
+        this.phases = phases;
+        this.columns = phases.length + 1;
+        this.times = new long[FRAMES * columns];
+    }
+
+    /**
+     * Starts measuring a frame.
+     */
+    public void begin() {
+        int row = (int) (count & (FRAMES - 1)) * columns;
+        Arrays.fill(times, row, row + columns, 0);
+        start = last = System.nanoTime();
+    }
+
+    /**
+     * Adds the time since the last mark, or the start of the frame, to a phase.
+     * @param phase the phase which has just ended
+     */
+    public void mark(int phase) {
+        long now = System.nanoTime();
+        times[(int) (count & (FRAMES - 1)) * columns + phase] += now - last;
+        last = now;
+    }
+
+    /**
+     * Finishes measuring a frame.
+     */
+    public void end() {
+        times[(int) (count & (FRAMES - 1)) * columns + phases.length] = System.nanoTime() - start;
+        count++;
+    }
+
+    /**
+     * Returns the name of what is profiled.
+     * @return String the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the names of the phases.
+     * @return String[] the names of the phases
+     */
+    public String[] getPhases() {
+        return phases;
+    }
+
+    /**
+     * Returns the percentiles of the times of a phase over the frames kept.
+     * This sorts the times, so it should not be called every frame.
+     * @param phase the phase, or the number of phases for the whole frame
+     * @param percentiles the percentiles, from 0 to 100
+     * @return long[] the times in nanoseconds, or zeros if no frame has been measured
+     */
+    public synchronized long[] getPercentiles(int phase, double... percentiles) {
+        long end = count;
+        int frames = (int) Math.min(end, FRAMES);
+        for (int i = 0; i < frames; i++) {
+            sorted[i] = times[(int) ((end - 1 - i) & (FRAMES - 1)) * columns + phase];
+        }
+        Arrays.sort(sorted, 0, frames);
+
+        long[] result = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length && frames > 0; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100 * frames) - 1;
+            result[i] = sorted[Math.max(0, Math.min(index, frames - 1))];
+        }
+        return result;
+    }
+
+    /**
+     * Writes the times of the frames kept into a CSV file, one frame a line, in microseconds.
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCsv(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.print("frame");
+            for (String phase: phases) {
+                out.print("," + phase);
+            }
+            out.println(",total");
+
+            long end = count;
+            for (long frame = Math.max(0, end - FRAMES); frame < end; frame++) {
+                int row = (int) (frame & (FRAMES - 1)) * columns;
+                out.print(frame);
+                for (int i = 0; i < columns; i++) {
+                    out.print("," + times[row + i] / 1000.0);
+                }
+                out.println();
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
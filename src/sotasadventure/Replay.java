@@ -0,0 +1,253 @@
+package sotasadventure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The class that records the input of a stage and replays it.
+ * A replay keeps the buttons of every tick in a byte, and a checksum of the world every few ticks.
+ * Since the world only depends on the stage, the counts it starts with, the buttons, and the time of each tick,
+ * replaying the buttons in a new world must give the same checksums. A replay which does not
+ * shows where the behavior of the game has changed.
+ *
+ * Run from the root of the repository to verify replays:
+ * <pre>
+ * javac -d out src/sotasadventure/*.java
+ * java -cp out:. sotasadventure.Replay stage.replay...
+ * </pre>
+ *
+ * @author Sota Nishiyama
+ */
+public class Replay {
+    private static final int MAGIC = 0x53415250;
+    private static final int VERSION = 1;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // a checksum is kept every second
+    public static final int CHECKSUM_INTERVAL = 10;
+
+    private String stage;
+    private int lives;
+    private int earnedCoins;
+    private int earnedGems;
+
+    private long tickLength;
+    private long firstTick = -1;
+    private int checksumInterval;
+
+    private byte[] buttons = new byte[1024];
+    private int tickCount;
+
+    private int[] checksums = new int[128];
+    private int checksumCount;
+    private int finalChecksum;
+
+    /**
+     * Starts a recording of a stage.
+     * @param stage the name of the stage
+     * @param lives the number of lives at the start
+     * @param earnedCoins the number of coins at the start
+     * @param earnedGems the number of gems at the start
+     * @param tickLength the length of a tick in nanoseconds
+     * @param checksumInterval the number of ticks between checksums
+     * @throws IllegalArgumentException if the length of a tick or the number of ticks between checksums is not positive
+     */
+    public Replay(String stage, int lives, int earnedCoins, int earnedGems, long tickLength, int checksumInterval) {
+        if (tickLength <= 0) {
+            throw new IllegalArgumentException("invalid tick length " + tickLength);
+        }
+        if (checksumInterval <= 0) {
+            throw new IllegalArgumentException("invalid checksum interval " + checksumInterval);
+        }
+
+        this.stage = stage;
+        this.lives = lives;
+        this.earnedCoins = earnedCoins;
+        this.earnedGems = earnedGems;
+        this.tickLength = tickLength;
+        this.checksumInterval = checksumInterval;
+    }
+
+    /**
+     * Records a tick after the world has moved by it. The ticks must be recorded in a row.
+     * @param elapsedTime the time the world was moved with
+     * @param buttons the buttons the world was moved with
+     * @param world the world
+     */
+    public void record(double elapsedTime, int buttons, World world) {
+        if (firstTick == -1) {
+            firstTick = Math.round(elapsedTime * NANOS_PER_SECOND / tickLength);
+        }
+
+        if (tickCount == this.buttons.length) {
+            this.buttons = Arrays.copyOf(this.buttons, tickCount * 2);
+        }
+        this.buttons[tickCount++] = (byte) buttons;
+
+        finalChecksum = world.checksum();
+        if (tickCount % checksumInterval == 0) {
+            if (checksumCount == checksums.length) {
+                checksums = Arrays.copyOf(checksums, checksumCount * 2);
+            }
+            checksums[checksumCount++] = finalChecksum;
+        }
+    }
+
+    /**
+     * Returns the time of a tick, computed the same way as the game loop does.
+     */
+    private double getTime(int tick) {
+        return (double) (firstTick + tick) * tickLength / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Replays the recording in the given world as fast as possible.
+     * @param world the world to replay in; its stage is replaced
+     * @return int the first tick after which the world differs from the recording, or -1 if it does not
+     */
+    public int verify(World world) {
+        world.load(stage, lives, earnedCoins, earnedGems);
+        world.start();
+
+        for (int i = 0; i < tickCount; i++) {
+            world.step(getTime(i), buttons[i]);
+
+            if ((i + 1) % checksumInterval == 0 && world.checksum() != checksums[(i + 1) / checksumInterval - 1]) {
+                return i;
+            }
+        }
+
+        if (tickCount > 0 && world.checksum() != finalChecksum) {
+            return tickCount - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the name of the stage.
+     * @return String the name of the stage
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * Returns the number of ticks recorded.
+     * @return int the number of ticks
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Writes the recording into a file.
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeUTF(stage);
+            out.writeInt(lives);
+            out.writeInt(earnedCoins);
+            out.writeInt(earnedGems);
+            out.writeLong(tickLength);
+            out.writeLong(firstTick);
+            out.writeInt(checksumInterval);
+
+            out.writeInt(tickCount);
+            out.write(buttons, 0, tickCount);
+            for (int i = 0; i < checksumCount; i++) {
+                out.writeInt(checksums[i]);
+            }
+            out.writeInt(finalChecksum);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a recording from a file.
+     * @param file the file
+     * @return Replay the recording
+     * @throws IOException if the file cannot be read or is not a replay
+     */
+    public static Replay read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException(file + " is not a replay");
+            }
+
+            String stage = in.readUTF();
+            int lives = in.readInt();
+            int earnedCoins = in.readInt();
+            int earnedGems = in.readInt();
+            long tickLength = in.readLong();
+            long firstTick = in.readLong();
+            int checksumInterval = in.readInt();
+            int tickCount = in.readInt();
+            if (tickLength <= 0 || checksumInterval <= 0 || tickCount < 0) {
+                throw new IOException(file + " is malformed");
+            }
+
+            Replay replay = new Replay(stage, lives, earnedCoins, earnedGems, tickLength, checksumInterval);
+            replay.firstTick = firstTick;
+            replay.tickCount = tickCount;
+            replay.buttons = new byte[replay.tickCount];
+            in.readFully(replay.buttons);
+
+            replay.checksumCount = replay.tickCount / replay.checksumInterval;
+            replay.checksums = new int[replay.checksumCount];
+            for (int i = 0; i < replay.checksumCount; i++) {
+                replay.checksums[i] = in.readInt();
+            }
+            replay.finalChecksum = in.readInt();
+            return replay;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Verifies the given replays and prints the results.
+     * @param args the paths of the replays
+     */
+    public static void main(String[] args) {
+        World world = new World();
+        boolean failed = false;
+
+        for (String path: args) {
+            try {
+                Replay replay = read(new File(path));
+
+                long start = System.nanoTime();
+                int tick = replay.verify(world);
+                long time = System.nanoTime() - start;
+
+                if (tick == -1) {
+                    System.out.printf("%s: %s, %d ticks in %.1f ms, ok%n", path, replay.stage, replay.tickCount, time / 1e6);
+                } else {
+                    System.out.printf("%s: %s, differs after tick %d%n", path, replay.stage, tick);
+                    failed = true;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
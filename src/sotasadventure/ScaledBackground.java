@@ -0,0 +1,50 @@
+package sotasadventure;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * The class that keeps an image scaled to the size of the component it fills.
+ * The image is scaled again only when the size changes, so repainting the component only copies it.
+ *
+ * @author Sota Nishiyama
+ */
+public class ScaledBackground {
+    private Image image;
+    private BufferedImage scaled;
+
+    /**
+     * Sets the image to scale.
+     * @param image the image of its original size
+     */
+    public ScaledBackground(Image image) {
+        this.image = image;
+    }
+
+    /**
+     * Draws the image scaled to the given size.
+     * @param g the graphics to draw on
+     * @param width the width of the component
+     * @param height the height of the component
+     */
+    public void draw(Graphics g, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+
+        if (scaled == null || scaled.getWidth() != width || scaled.getHeight() != height) {
+            if (scaled != null) {
+                scaled.flush();
+            }
+
+            scaled = Util.createCompatibleImage(width, height);
+            Graphics2D g2 = scaled.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(image, 0, 0, width, height, null);
+            g2.dispose();
+        }
+
+        g.drawImage(scaled, 0, 0, null);
+    }
+}
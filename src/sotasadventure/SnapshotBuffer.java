@@ -0,0 +1,50 @@
+package sotasadventure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The class that passes snapshots from the game loop to the renderer without locks.
+ * It has three snapshots: the game loop fills the back one, the renderer reads the front one,
+ * and the last published one waits in the middle. Publishing and reading swap a snapshot with the middle one,
+ * so neither side ever waits for the other, and the renderer always reads the newest complete snapshot.
+ * Only one thread may fill snapshots, and only one thread may read them.
+ *
+ * @author Sota Nishiyama
+ */
+public class SnapshotBuffer {
+    // set in the middle index when the middle snapshot has not been read yet
+    private static final int FRESH = 4;
+
+    private final WorldSnapshot[] snapshots = {new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot()};
+
+    private int back = 0;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int front = 2;
+
+    /**
+     * Returns the snapshot to fill. Called by the game loop.
+     * @return WorldSnapshot the back snapshot
+     */
+    public WorldSnapshot getBack() {
+        return snapshots[back];
+    }
+
+    /**
+     * Publishes the back snapshot to the renderer. Called by the game loop.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Returns the newest published snapshot. Called by the renderer.
+     * The snapshot is not changed until the next call.
+     * @return WorldSnapshot the front snapshot, or null if nothing has been published yet
+     */
+    public WorldSnapshot getFront() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & ~FRESH;
+        }
+        return snapshots[front].stage == null ? null : snapshots[front];
+    }
+}
@@ -1,18 +1,7 @@
 package sotasadventure;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Image;
-import java.io.IOException;
 import java.util.ArrayList;
 
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
-import javax.swing.ImageIcon;
-
 /**
  * The class that represents Sota.
  * @author Sota Nishiyama
@@ -37,24 +26,13 @@ public class Sota extends Sprite {
     private double swordStartTime;
     private double swordSuccession = .7;
 
-    private Image standRightImage;
-    private Image standLeftImage;
-    private Image jumpRightImage;
-    private Image jumpLeftImage;
-    private Image attackRightImage;
-    private Image attackLeftImage;
-    private Image bulletImage;
-    private Image swordRightImage;
-    private Image swordLeftImage;
-    private Image gunRightImage;
-    private Image gunLeftImage;
-
-    private Clip gunSound;
-    private Clip swordSound;
-    private Clip attackedSound;
+    // set when Sota fires, swings the sword, or is hurt, and cleared by the world after a tick
+    public boolean fired;
+    public boolean swung;
+    public boolean hurt;
 
     /**
-     * Sets Sota's size and loads Sota's images.
+     * Sets Sota's size.
      * @param width Sota's width
      * @param height Sota's height
      */
@@ -62,8 +40,6 @@ public class Sota extends Sprite {
         super(width, height);
         maxHP = 3;
         invincibleDuration = 2;
-        healthColor = Color.BLUE;
-        loadResources();
     }
 
     /**
@@ -75,6 +51,8 @@ public class Sota extends Sprite {
         Vector p = map.getStartingPoint();
         position.x = p.x;
         position.y = p.y;
+        lastPosition.x = p.x;
+        lastPosition.y = p.y;
 
         // initialize the velocity and other conditions
         velocity.x = velocity.y = 0;
@@ -96,24 +74,21 @@ public class Sota extends Sprite {
 
     /**
      * Updates Sota's position and other conditions.
-     * @param movement The list of Sota's movements.
+     * @param buttons the bitmask of the buttons of Input for this tick
      * @param elapsedTime the time elapsed since the game started
      */
-    public void move(ArrayList<String> movement, double elapsedTime) {
+    public void move(int buttons, double elapsedTime) {
 
-        if (movement.contains("fire")) {
+        if ((buttons & Input.FIRE) != 0) {
             initBullet(elapsedTime);
-            movement.remove("fire");
         }
 
-        if (movement.contains("attack")) {
+        if ((buttons & Input.ATTACK) != 0) {
             sword = true;
             if (elapsedTime - swordStartTime >= swordSuccession) {
                 swordStartTime = elapsedTime;
             }
-            swordSound.setFramePosition(0);
-            swordSound.start();
-            movement.remove("attack");
+            swung = true;
         }
 
         if (elapsedTime - swordStartTime >= swordTime) {
@@ -124,12 +99,12 @@ public class Sota extends Sprite {
         int vy = velocity.y;
 
         // x velocity
-        if (movement.contains("right") && movement.contains("left")) {
+        if ((buttons & Input.RIGHT) != 0 && (buttons & Input.LEFT) != 0) {
             vx = 0;
-        } else if (movement.contains("right")) {
+        } else if ((buttons & Input.RIGHT) != 0) {
             vx += 10;
             facingRight = true;
-        } else if (movement.contains("left")) {
+        } else if ((buttons & Input.LEFT) != 0) {
             vx -= 10;
             facingRight = false;
         }
@@ -146,7 +121,7 @@ public class Sota extends Sprite {
 
         // y velocity
         // jump
-        if (movement.contains("up")) {
+        if ((buttons & Input.UP) != 0) {
             if (!jumping) {
                 jumping = true;
                 vy = -27;
@@ -154,7 +129,7 @@ public class Sota extends Sprite {
         }
 
         // cut off jump
-        if (!movement.contains("up") && vy < JUMP_CUTOFF) {
+        if ((buttons & Input.UP) == 0 && vy < JUMP_CUTOFF) {
             vy = JUMP_CUTOFF;
         }
 
@@ -195,59 +170,7 @@ public class Sota extends Sprite {
         super.attacked(elapsedTime, damage);
 
         if (hpBeforeAttacked != hp) {
-            attackedSound.setFramePosition(0);
-            attackedSound.start();
-        }
-    }
-
-    /**
-     * Draws Sota, his weapons, and his health bar.
-     * @param g the graphics
-     * @param mapX the x coordinate of the map
-     * @param mapY the y coordinate of the map
-     */
-    @Override
-    public void draw(Graphics g, int mapX, int mapY) {
-        // set Sota's image
-        if (sword || !bullets.isEmpty()) {
-            if (facingRight) {
-                image = attackRightImage;
-            } else {
-                image = attackLeftImage;
-            }
-        } else if (jumping) {
-            if (facingRight) {
-                image = jumpRightImage;
-            } else {
-                image = jumpLeftImage;
-            }
-        } else {
-            if (facingRight) {
-                image = standRightImage;
-            } else {
-                image = standLeftImage;
-            }
-        }
-
-        super.draw(g, mapX, mapY);
-
-        // draw his weapons
-        for (Bullet bullet: bullets) {
-            g.drawImage(bulletImage, bullet.position.x - Constants.TILE_SIZE / 2 + mapX, bullet.position.y - Constants.TILE_SIZE / 2 + mapY, null);
-        }
-        if (!bullets.isEmpty()) {
-            if (facingRight) {
-                g.drawImage(gunRightImage, position.x + width + mapX, position.y + mapY, null);
-            } else {
-                g.drawImage(gunLeftImage, position.x - width + mapX, position.y + mapY, null);
-            }
-        }
-        if (sword) {
-            if (facingRight) {
-                g.drawImage(swordRightImage, position.x + width + mapX, position.y + height / 2 - swordHeight / 2 + mapY, null);
-            } else {
-                g.drawImage(swordLeftImage, position.x - swordWidth + mapX, position.y + height / 2 - swordHeight / 2 + mapY, null);
-            }
+            hurt = true;
         }
     }
 
@@ -272,65 +195,11 @@ public class Sota extends Sprite {
             bullet.position.y = position.y + height / 2;
             bullet.speed = -30;
         }
+        bullet.lastPosition.x = bullet.position.x;
+        bullet.lastPosition.y = bullet.position.y;
 
         bullets.add(bullet);
 
-        gunSound.setFramePosition(0);
-        gunSound.start();
-    }
-
-    /**
-     * Loads resources.
-     */
-    private void loadResources() {
-        ImageIcon ii;
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/sota.png"));
-        standRightImage = Util.getScaledImage(ii.getImage(), width, height);
-
-        standLeftImage = Util.getFlippedImage(standRightImage);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/sota-jump.png"));
-        jumpRightImage = Util.getScaledImage(ii.getImage(), width, height);
-
-        jumpLeftImage = Util.getFlippedImage(jumpRightImage);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/sota-attack.png"));
-        attackRightImage = Util.getScaledImage(ii.getImage(), width, height);
-
-        attackLeftImage = Util.getFlippedImage(attackRightImage);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/bullet.png"));
-        bulletImage = Util.getScaledImage(ii.getImage(), width, height);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/sword.png"));
-        swordRightImage = Util.getScaledImage(ii.getImage(), swordWidth, swordHeight);
-
-        swordLeftImage = Util.getFlippedImage(swordRightImage);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/gun.png"));
-        gunRightImage = Util.getScaledImage(ii.getImage(), width, height);
-
-        gunLeftImage = Util.getFlippedImage(gunRightImage);
-
-        try {
-            AudioInputStream audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/gun.wav"));
-            gunSound = AudioSystem.getClip();
-            gunSound.open(audioIn);
-
-            audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/sword.wav"));
-            swordSound = AudioSystem.getClip();
-            swordSound.open(audioIn);
-
-            audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/attacked.wav"));
-            attackedSound = AudioSystem.getClip();
-            attackedSound.open(audioIn);
-        } catch (UnsupportedAudioFileException e) {
-            e.printStackTrace();
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        fired = true;
     }
 }
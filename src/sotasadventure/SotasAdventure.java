@@ -4,11 +4,7 @@ import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Dimension;
 import java.awt.EventQueue;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
 
-import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
@@ -27,7 +23,7 @@ public class SotasAdventure {
      *
      * This method creates a StateMachine and add several States used in this game to it.
      *
-     * This method sets a timer to update and render the contents every 100 miliseconds.
+     * This method starts a game loop which updates the contents at a fixed rate and renders them on its own thread.
      *
      * @param args unused
      */
@@ -41,7 +37,7 @@ public class SotasAdventure {
                 JFrame frame = new JFrame();
                 frame.setLayout(new BorderLayout());
                 frame.setTitle("Sota's Adventure");
-                frame.setIconImage(new ImageIcon(getClass().getResource("/resources/images/sota.png")).getImage());
+                frame.setIconImage(Assets.getImage("/resources/images/sota.png"));
                 frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
                 frame.setMinimumSize(new Dimension(500, 500));
 
@@ -63,21 +59,9 @@ public class SotasAdventure {
 
                 frame.setVisible(true);
 
-                // set and start the timer
-                double start = new Date().getTime();
-                Timer timer = new Timer();
-                timer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        // calculate the elapsed time
-                        double now = new Date().getTime();
-                        double elapsedTime = (now - start) / 1000;
-
-                        // update and render the current State
-                        gameMode.update(elapsedTime);
-                        gameMode.render();
-                    }
-                }, 0, 100);
+                // start the game loop
+                GameLoop loop = new GameLoop(gameMode, Constants.TICK_RATE, Constants.FRAME_RATE);
+                loop.start();
             }
         });
     }
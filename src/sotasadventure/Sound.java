@@ -0,0 +1,120 @@
+package sotasadventure;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * The class that represents a sound effect decoded into the format of the mixer.
+ * Each sound file is decoded once and shared, however many times it is loaded.
+ *
+ * @author Sota Nishiyama
+ */
+public class Sound {
+    private static final ConcurrentHashMap<String, Sound> sounds = new ConcurrentHashMap<String, Sound>();
+
+    // interleaved stereo samples at the rate of the mixer
+    final short[] samples;
+    final int frames;
+
+    // how many voices may play this sound at once
+    final int maxVoices;
+    // a sound can take the voice of a sound with a lower or the same priority
+    final int priority;
+
+    private Sound(short[] samples, int maxVoices, int priority) {
+        this.samples = samples;
+        this.frames = samples.length / 2;
+        this.maxVoices = maxVoices;
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the sound of the given file, decoding it on the first call.
+     * The number of voices and the priority given on the first call are kept.
+     * @param path the path of the WAV file
+     * @param maxVoices how many voices may play the sound at once
+     * @param priority the priority of the sound
+     * @return Sound the sound, or null if it cannot be decoded
+     */
+    public static Sound load(String path, int maxVoices, int priority) {
+        Sound sound = sounds.get(path);
+        if (sound != null) return sound;
+
+        synchronized (Sound.class) {
+            sound = sounds.get(path);
+            if (sound != null) return sound;
+
+            try {
+                sound = new Sound(decode(path), maxVoices, priority);
+                sounds.put(path, sound);
+            } catch (UnsupportedAudioFileException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return sound;
+    }
+
+    /**
+     * Decodes a file into 16-bit stereo samples at the rate of the mixer.
+     */
+    private static short[] decode(String path) throws UnsupportedAudioFileException, IOException {
+        InputStream resource = Sound.class.getResourceAsStream(path);
+        if (resource == null) {
+            throw new IOException(path + " is not found");
+        }
+
+        AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(resource));
+        try {
+            AudioFormat format = source.getFormat();
+            int channels = format.getChannels();
+            float rate = format.getSampleRate();
+
+            // let Java Sound convert the encoding, and convert the rate and the channels here
+            AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, 16, channels, channels * 2, rate, false);
+            AudioInputStream input = AudioSystem.getAudioInputStream(pcm, source);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+            byte[] data = bytes.toByteArray();
+
+            int sourceFrames = data.length / (channels * 2);
+            int frames = (int) ((long) sourceFrames * AudioMixer.SAMPLE_RATE / (long) rate);
+            short[] samples = new short[frames * 2];
+            for (int i = 0; i < frames; i++) {
+                // linear interpolation between the two nearest frames of the source
+                double position = (double) i * rate / AudioMixer.SAMPLE_RATE;
+                int frame = (int) position;
+                double t = position - frame;
+                int next = Math.min(frame + 1, sourceFrames - 1);
+
+                for (int c = 0; c < 2; c++) {
+                    int channel = Math.min(c, channels - 1);
+                    int a = sample(data, frame * channels + channel);
+                    int b = sample(data, next * channels + channel);
+                    samples[i * 2 + c] = (short) Math.round(a + (b - a) * t);
+                }
+            }
+            return samples;
+        } finally {
+            source.close();
+        }
+    }
+
+    private static int sample(byte[] data, int i) {
+        return (short) ((data[i * 2] & 0xff) | (data[i * 2 + 1] << 8));
+    }
+}
@@ -1,12 +1,7 @@
 package sotasadventure;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Image;
 import java.util.ArrayList;
 
-import javax.swing.ImageIcon;
-
 /**
  * The class that represents enemies' space ship.
  * @author Sota Nishiyama
@@ -18,7 +13,7 @@ public class SpaceShip extends Sprite {
     private int deployCount = 0;
 
     /**
-     * Sets the size of the space ship and loads images of the space ship.
+     * Sets the size of the space ship.
      * @param width the width of space ship
      * @param height the height of space ship
      */
@@ -27,9 +22,7 @@ public class SpaceShip extends Sprite {
         maxHP = 10;
         damage = 1;
         invincibleDuration = 2;
-        healthColor = Color.RED;
         deployedTime = -DEPLOY_INTERVAL;
-        loadResources();
     }
 
     /**
@@ -85,14 +78,4 @@ public class SpaceShip extends Sprite {
         }
         return enemies;
     }
-
-    /**
-     * Loads images of the space ship.
-     */
-    private void loadResources() {
-        ImageIcon ii;
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/spaceship.png"));
-        image = Util.getScaledImage(ii.getImage(), width, (int) (height * 1.33));
-    }
 }
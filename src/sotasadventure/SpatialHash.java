@@ -0,0 +1,200 @@
+package sotasadventure;
+
+import java.util.Arrays;
+
+/**
+ * The class that finds objects close to an area quickly.
+ * Objects are registered by their ids to every square cell their boxes overlap,
+ * and the cells are stored in hashed buckets, which are doubled when they get crowded.
+ * An object can be moved by registering it again, which hides the cells it was registered to before.
+ * Once its arrays have grown large enough, the hash does not allocate any memory.
+ *
+ * @author Sota Nishiyama
+ */
+public class SpatialHash {
+    private final int cellSize;
+    private int mask;
+
+    // the first entry of each bucket, valid only if it was set in the current generation
+    private int[] heads;
+    private int[] headGenerations;
+    private int generation = 1;
+
+    private int[] entryIds = new int[64];
+    private int[] entryCellXs = new int[64];
+    private int[] entryCellYs = new int[64];
+    private int[] entryNexts = new int[64];
+    private int[] entryStamps = new int[64];
+    private int size;
+
+    // the stamp of the latest registration of each id, so that entries left behind by a move are skipped
+    private int[] stamps = new int[64];
+
+    // the query in which each id was last found, to report each id once
+    private int[] marks = new int[64];
+    private int queryCount;
+
+    private int[] results = new int[64];
+    private int resultCount;
+
+    /**
+     * Sets the size of cells and the number of buckets.
+     * @param cellSize the width and the height of a cell
+     * @param buckets the initial number of buckets, rounded up to a power of two
+     */
+    public SpatialHash(int cellSize, int buckets) {
+        this.cellSize = cellSize;
+
+        int n = Integer.highestOneBit(Math.max(buckets, 1));
+        if (n < buckets) n <<= 1;
+        mask = n - 1;
+        heads = new int[n];
+        headGenerations = new int[n];
+    }
+
+    /**
+     * Removes all objects.
+     */
+    public void clear() {
+        size = 0;
+        if (++generation == 0) {
+            Arrays.fill(headGenerations, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Registers an object to the cells its box overlaps.
+     * @param id the id of the object, which must not be negative
+     * @param x the x coordinate of the box
+     * @param y the y coordinate of the box
+     * @param width the width of the box
+     * @param height the height of the box
+     */
+    public void insert(int id, int x, int y, int width, int height) {
+        if (id >= marks.length) {
+            marks = grow(marks, id + 1);
+            stamps = grow(stamps, id + 1);
+        }
+
+        int lastX = Math.floorDiv(x + width, cellSize);
+        int lastY = Math.floorDiv(y + height, cellSize);
+        for (int cy = Math.floorDiv(y, cellSize); cy <= lastY; cy++) {
+            for (int cx = Math.floorDiv(x, cellSize); cx <= lastX; cx++) {
+                if (size == entryIds.length) {
+                    entryIds = grow(entryIds, size + 1);
+                    entryCellXs = grow(entryCellXs, size + 1);
+                    entryCellYs = grow(entryCellYs, size + 1);
+                    entryNexts = grow(entryNexts, size + 1);
+                    entryStamps = grow(entryStamps, size + 1);
+                }
+                if (size > heads.length * 2) {
+                    rehash();
+                }
+
+                int bucket = bucket(cx, cy);
+                entryIds[size] = id;
+                entryCellXs[size] = cx;
+                entryCellYs[size] = cy;
+                entryStamps[size] = stamps[id];
+                entryNexts[size] = headGenerations[bucket] == generation ? heads[bucket] : -1;
+                heads[bucket] = size;
+                headGenerations[bucket] = generation;
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Registers an object again to the cells its box overlaps now, forgetting the cells it was registered to.
+     * @param id the id of the object, which must have been registered since the last clear
+     * @param x the x coordinate of the box
+     * @param y the y coordinate of the box
+     * @param width the width of the box
+     * @param height the height of the box
+     */
+    public void move(int id, int x, int y, int width, int height) {
+        stamps[id]++;
+        insert(id, x, y, width, height);
+    }
+
+    /**
+     * Finds the objects registered to the cells the given box overlaps.
+     * The ids found are kept in ascending order until the next query and can be read by get.
+     * @param x the x coordinate of the box
+     * @param y the y coordinate of the box
+     * @param width the width of the box
+     * @param height the height of the box
+     * @return int the number of objects found
+     */
+    public int query(int x, int y, int width, int height) {
+        if (++queryCount == 0) {
+            Arrays.fill(marks, 0);
+            queryCount = 1;
+        }
+        resultCount = 0;
+
+        int lastX = Math.floorDiv(x + width, cellSize);
+        int lastY = Math.floorDiv(y + height, cellSize);
+        for (int cy = Math.floorDiv(y, cellSize); cy <= lastY; cy++) {
+            for (int cx = Math.floorDiv(x, cellSize); cx <= lastX; cx++) {
+                int bucket = bucket(cx, cy);
+                if (headGenerations[bucket] != generation) continue;
+
+                for (int e = heads[bucket]; e != -1; e = entryNexts[e]) {
+                    int id = entryIds[e];
+                    if (entryCellXs[e] != cx || entryCellYs[e] != cy || entryStamps[e] != stamps[id] || marks[id] == queryCount) continue;
+
+                    marks[id] = queryCount;
+                    if (resultCount == results.length) {
+                        results = grow(results, resultCount + 1);
+                    }
+
+                    // keep the results sorted so that callers see objects in the order they were added
+                    int i = resultCount++;
+                    while (i > 0 && results[i - 1] > id) {
+                        results[i] = results[i - 1];
+                        i--;
+                    }
+                    results[i] = id;
+                }
+            }
+        }
+        return resultCount;
+    }
+
+    /**
+     * Returns an id found by the last query.
+     * @param i the index of the id
+     * @return int the id
+     */
+    public int get(int i) {
+        return results[i];
+    }
+
+    /**
+     * Doubles the number of buckets and puts the entries into the new buckets.
+     */
+    private void rehash() {
+        heads = new int[heads.length * 2];
+        headGenerations = new int[heads.length];
+        mask = heads.length - 1;
+
+        for (int e = 0; e < size; e++) {
+            int bucket = bucket(entryCellXs[e], entryCellYs[e]);
+            entryNexts[e] = headGenerations[bucket] == generation ? heads[bucket] : -1;
+            heads[bucket] = e;
+            headGenerations[bucket] = generation;
+        }
+    }
+
+    private int bucket(int cx, int cy) {
+        return (cx * 73856093 ^ cy * 19349663) & mask;
+    }
+
+    private static int[] grow(int[] array, int minLength) {
+        int[] grown = new int[Math.max(array.length * 2, minLength)];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
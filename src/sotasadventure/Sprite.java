@@ -1,9 +1,5 @@
 package sotasadventure;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Image;
-
 /**
  * The class that represents sprites.
  * This class is the parent class of Sota, Enemy, and SpaceShip class.
@@ -11,6 +7,7 @@ import java.awt.Image;
  */
 public class Sprite {
     public Vector position = new Vector();
+    public Vector lastPosition = new Vector();
     public Vector velocity = new Vector();
 
     public int width;
@@ -29,9 +26,6 @@ public class Sprite {
     protected double attackedTime;
     protected double invincibleDuration;
 
-    public Image image;
-    protected Color healthColor;
-
     /**
      * Sets the size of the sprite.
      * @param width the width of the sprite.
@@ -50,6 +44,8 @@ public class Sprite {
     public void init(int x, int y) {
         position.x = x;
         position.y = y;
+        lastPosition.x = x;
+        lastPosition.y = y;
 
         velocity.x = velocity.y = 0;
 
@@ -67,6 +63,8 @@ public class Sprite {
      */
     public void move(double elapsedTime) {
         // set the velocity and the position
+        lastPosition.x = position.x;
+        lastPosition.y = position.y;
         position.add(velocity);
 
         // make the enemy not invincible when a certain time has passed since attacked
@@ -242,25 +240,4 @@ public class Sprite {
             alive = false;
         }
     }
-
-    /**
-     * Draws the sprite and its health bar.
-     * @param g the graphics
-     * @param mapX the x coordinate of the map
-     * @param mapY the y coordinate of the map
-     */
-    public void draw(Graphics g, int mapX, int mapY) {
-        g.drawImage(image, position.x + mapX, position.y + mapY, null);
-
-        if (invincible) {
-            g.setColor(new Color(255, 0, 0, 50));
-            g.fillRect(position.x + mapX, position.y + mapY, width, height);
-        }
-
-        // draw the sprite's health bar
-        g.setColor(Color.BLACK);
-        g.fillRect(position.x + mapX, position.y + mapY - 10, width, 5);
-        g.setColor(healthColor);
-        g.fillRect(position.x + mapX, position.y + mapY - 10, width * hp / maxHP, 5);
-    }
 }
@@ -1,158 +1,302 @@
 package sotasadventure;
 
-import java.awt.Image;
-import java.io.InputStream;
-import java.io.IOException;
 import java.util.Arrays;
-import java.util.ArrayList;
-import java.util.Properties;
-
-import javax.swing.ImageIcon;
 
 public class Stage {
+    // how each tile looks
+    public static final int TILE_NONE = 0;
+    public static final int TILE_SURFACE = 1;
+    public static final int TILE_LEFT = 2;
+    public static final int TILE_RIGHT = 3;
+    public static final int TILE_MID = 4;
+    public static final int TILE_CENTER = 5;
+    public static final int TILE_HILL_RIGHT = 6;
+    public static final int TILE_HILL_RIGHT2 = 7;
+    public static final int TILE_HILL_LEFT = 8;
+    public static final int TILE_HILL_LEFT2 = 9;
+    public static final int TILE_SIGN = 10;
+    public static final int TILE_DOOR_CLOSED = 11;
+    public static final int TILE_DOOR_OPENED = 12;
+    public static final int TILE_MASK = 15;
+    public static final int WATER_OVERLAY = 16;
+
     public String name;
-    public int[][][] map;
+    public TileLayer[] map;
+    public TileLayer[] visuals;
     public int timeLimit;
     public int spaceShipSpeed;
     public int enemySpeed;
     public double friction;
 
-    public Image surface;
-    public Image center;
-    public Image right;
-    public Image left;
-    public Image mid;
-    public Image hillRight;
-    public Image hillRight2;
-    public Image hillLeft;
-    public Image hillLeft2;
+    // where Sota and the space ship appear in each map, or -1 if they do not
+    public int[] startXs;
+    public int[] startYs;
+    public int[] shipXs;
+    public int[] shipYs;
+    // the tiles of the enemies and the coins in each map, as pairs of x and y in the order of the rows
+    public int[][] enemies;
+    public int[][] coins;
 
     /**
-     * Constructs a stage with given name, time limit, and speed of space ship and loads the map from the properties file.
+     * Constructs a stage with given name, maps, time limit, speed of space ship and enemies, and friction.
      * @param name the name of the stage
+     * @param map the maps of the stage
+     * @param timeLimit the time limit of the stage
+     * @param spaceShipSpeed the speed of the space ship
+     * @param enemySpeed the speed of enemies
+     * @param friction the friction of the ground
      */
-    public Stage(String name) {
-        this.name = name;
-
-        Properties prop = new Properties();
-        InputStream input = null;
+    public Stage(String name, TileLayer[] map, int timeLimit, int spaceShipSpeed, int enemySpeed, double friction) {
+        this(name, map, null, timeLimit, spaceShipSpeed, enemySpeed, friction);
+    }
 
-        try {
-            input = getClass().getResourceAsStream("/resources/stages.properties");
-            prop.load(input);
+    /**
+     * Constructs a stage whose spawn tables have been read from the stage file.
+     * A spawn table has the tiles of the starting point and the space ship (-1 if there is none),
+     * and the number of enemies and coins followed by the tiles of them.
+     * @param name the name of the stage
+     * @param map the maps of the stage
+     * @param spawns the spawn table of each map, or null to find where things appear in the tiles
+     * @param timeLimit the time limit of the stage
+     * @param spaceShipSpeed the speed of the space ship
+     * @param enemySpeed the speed of enemies
+     * @param friction the friction of the ground
+     */
+    public Stage(String name, TileLayer[] map, int[][] spawns, int timeLimit, int spaceShipSpeed, int enemySpeed, double friction) {
+        this.name = name;
+        this.map = map;
+        this.timeLimit = timeLimit;
+        this.spaceShipSpeed = spaceShipSpeed;
+        this.enemySpeed = enemySpeed;
+        this.friction = friction;
 
-            String data = prop.getProperty(name);
-            map = convertToArray(data);
-            timeLimit = Integer.parseInt(read(data, "timeLimit"));
-            spaceShipSpeed = Integer.parseInt(read(data, "spaceShipSpeed"));
-            enemySpeed = Integer.parseInt(read(data, "enemySpeed"));
-            friction = Double.parseDouble(read(data, "friction"));
+        compileVisuals();
+        compileSpawns(spawns);
+    }
 
-            input.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Changes the type of the given tile and updates how the tiles around it look.
+     * @param stageNum the number of the map in the stage
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @param type the new type of the tile
+     */
+    public void setTile(int stageNum, int x, int y, int type) {
+        boolean spawn = isSpawn(map[stageNum].get(x, y)) || isSpawn(type);
+        map[stageNum].set(x, y, type);
+        if (spawn) {
+            compileSpawns(stageNum);
         }
 
-        loadResources();
+        for (int i = Math.max(y - 1, 0); i <= Math.min(y + 1, map[stageNum].getHeight() - 1); i++) {
+            for (int j = Math.max(x - 1, 0); j <= Math.min(x + 1, map[stageNum].getWidth() - 1); j++) {
+                visuals[stageNum].set(j, i, getVisual(stageNum, j, i));
+            }
+        }
     }
 
     /**
-     * Converts the map in properties file to three-dimensional array.
+     * Decides how every tile of every map looks.
+     * The tiles of a large map are decided a chunk at a time when they are first drawn.
      */
-    private int[][][] convertToArray(String str) {
-        ArrayList<String> temp = new ArrayList<String>();
-
-        int start = 0;
-        for (int i = 0; i < str.length(); i++) {
-            if (str.charAt(i) == '[') {
-                start = i + 1;
-            } else if (str.charAt(i) == ']') {
-                temp.add(str.substring(start, i));
+    private void compileVisuals() {
+        visuals = new TileLayer[map.length];
+        for (int k = 0; k < map.length; k++) {
+            if (map[k] instanceof ChunkedTileLayer) {
+                final int stageNum = k;
+                visuals[k] = new ChunkedTileLayer(map[k].getWidth(), map[k].getHeight(), TILE_NONE, new ChunkedTileLayer.Source() {
+                    @Override
+                    public boolean read(int chunkX, byte[] tiles, int offset) {
+                        int x = chunkX * ChunkedTileLayer.CHUNK_SIZE;
+
+                        boolean drawn = false;
+                        for (int i = 0; i < map[stageNum].getHeight(); i++) {
+                            for (int j = x; j < Math.min(x + ChunkedTileLayer.CHUNK_SIZE, map[stageNum].getWidth()); j++) {
+                                int visual = getVisual(stageNum, j, i);
+                                tiles[offset + i * ChunkedTileLayer.CHUNK_SIZE + j - x] = (byte) visual;
+                                drawn |= visual != TILE_NONE;
+                            }
+                        }
+                        return drawn;
+                    }
+                });
+                continue;
             }
-        }
-        String[] maps = temp.toArray(new String[temp.size()]);
-
-        String[][] maps2 = new String[maps.length][];
-        for (int i = 0; i < maps.length; i++) {
-            temp.clear();
-            for (int j = 0; j < maps[i].length(); j++) {
-                if (maps[i].charAt(j) == '{') {
-                    start = j + 1;
-                } else if (maps[i].charAt(j) == '}') {
-                    temp.add(maps[i].substring(start, j));
+
+            visuals[k] = new DenseTileLayer(map[k].getWidth(), map[k].getHeight(), TILE_NONE);
+            for (int i = 0; i < map[k].getHeight(); i++) {
+                for (int j = 0; j < map[k].getWidth(); j++) {
+                    visuals[k].set(j, i, getVisual(k, j, i));
                 }
             }
-            maps2[i] = temp.toArray(new String[temp.size()]);
         }
+    }
 
-        String[][][] maps3 = new String[maps2.length][][];
-        for (int i = 0; i < maps2.length; i++) {
-            temp.clear();
-            maps3[i] = new String[maps2[i].length][];
-            for (int j = 0; j < maps2[i].length; j++) {
-                temp = new ArrayList<String>(Arrays.asList(maps2[i][j].split(" ")));
-                temp.removeAll(new ArrayList<String>(Arrays.asList(new String[] {""})));
-                maps3[i][j] = temp.toArray(new String[temp.size()]);
+    /**
+     * Finds where things appear in every map, so that entering a map does not need to look through its tiles.
+     * The spawn tables of the stage file are used if they are given.
+     */
+    private void compileSpawns(int[][] spawns) {
+        startXs = new int[map.length];
+        startYs = new int[map.length];
+        shipXs = new int[map.length];
+        shipYs = new int[map.length];
+        enemies = new int[map.length][];
+        coins = new int[map.length][];
+        for (int k = 0; k < map.length; k++) {
+            if (spawns != null) {
+                readSpawns(k, spawns[k]);
+            } else {
+                compileSpawns(k);
             }
         }
+    }
 
-        int[][][] intMap = new int[maps3.length][][];
-        for (int i = 0; i < maps3.length; i++) {
-            intMap[i] = new int[maps3[i].length][];
-            for (int j = 0; j < maps3[i].length; j++) {
-                intMap[i][j] = new int[maps3[i][j].length];
-                for (int k = 0; k < maps3[i][j].length; k++) {
-                    intMap[i][j][k] = Integer.parseInt(maps3[i][j][k]);
+    /**
+     * Takes where things appear in a map from its spawn table.
+     */
+    private void readSpawns(int k, int[] spawns) {
+        startXs[k] = spawns[0];
+        startYs[k] = spawns[1];
+        shipXs[k] = spawns[2];
+        shipYs[k] = spawns[3];
+
+        int enemyCount = spawns[4];
+        enemies[k] = Arrays.copyOfRange(spawns, 5, 5 + enemyCount * 2);
+        int coinCount = spawns[5 + enemyCount * 2];
+        coins[k] = Arrays.copyOfRange(spawns, 6 + enemyCount * 2, 6 + enemyCount * 2 + coinCount * 2);
+    }
+
+    /**
+     * Finds where things appear in a map.
+     */
+    private void compileSpawns(int k) {
+        TileLayer m = map[k];
+        startXs[k] = startYs[k] = shipXs[k] = shipYs[k] = -1;
+
+        int enemyCount = 0;
+        int coinCount = 0;
+        for (int i = 0; i < m.getHeight(); i++) {
+            for (int j = 0; j < m.getWidth(); j++) {
+                if (m.get(j, i) == Map.ENEMY) {
+                    enemyCount++;
+                } else if (m.get(j, i) == Map.COIN) {
+                    coinCount++;
                 }
             }
         }
+        enemies[k] = new int[enemyCount * 2];
+        coins[k] = new int[coinCount * 2];
 
-        return intMap;
+        enemyCount = coinCount = 0;
+        for (int i = 0; i < m.getHeight(); i++) {
+            for (int j = 0; j < m.getWidth(); j++) {
+                switch (m.get(j, i)) {
+                    case Map.START:
+                    case Map.DOOR_OPENED:
+                    if (startXs[k] == -1) {
+                        startXs[k] = j;
+                        startYs[k] = i;
+                    }
+                    break;
+
+                    case Map.SHIP:
+                    if (shipXs[k] == -1) {
+                        shipXs[k] = j;
+                        shipYs[k] = i;
+                    }
+                    break;
+
+                    case Map.ENEMY:
+                    enemies[k][enemyCount++] = j;
+                    enemies[k][enemyCount++] = i;
+                    break;
+
+                    case Map.COIN:
+                    coins[k][coinCount++] = j;
+                    coins[k][coinCount++] = i;
+                    break;
+                }
+            }
+        }
     }
 
     /**
-     * Reads the value of the key in a data
-     * @param data the string which contains the key
-     * @param key the key of the value to be read
+     * Checks if something appears on the given type of tile.
      */
-    private String read(String data, String key) {
-        int i = data.indexOf(key) + key.length() + 1;
-        StringBuilder ret = new StringBuilder("");
-        while (i < data.length() && (Character.isDigit(data.charAt(i)) || data.charAt(i) == '.')) {
-            ret.append(data.charAt(i));
-            i++;
-        }
-        return ret.toString();
+    private static boolean isSpawn(int type) {
+        return type == Map.START || type == Map.DOOR_OPENED || type == Map.SHIP || type == Map.ENEMY || type == Map.COIN;
     }
 
     /**
-     * Loads images of the stage.
+     * Returns how the given tile looks, which depends on the tiles around it.
+     * The tiles out of the map are ground.
      */
-    private void loadResources() {
-        ImageIcon ii;
+    private int getVisual(int k, int j, int i) {
+        TileLayer m = map[k];
+        int tile = m.get(j, i);
+        int visual;
+
+        switch (tile) {
+            case Map.GROUND:
+            int above = m.get(j, i - 1);
+            int left = m.get(j - 1, i);
+            int right = m.get(j + 1, i);
+            if (above != Map.GROUND && above != Map.GROUND_HILL_LEFT && above != Map.GROUND_HILL_RIGHT) { // surface
 
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/" + name +"/surface.png"));
-        surface = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
+                if (left != Map.GROUND && left != Map.GROUND_HILL_LEFT &&
+                    right != Map.GROUND && right != Map.GROUND_HILL_RIGHT) { // both
+                    visual = TILE_SURFACE;
+                } else if (left != Map.GROUND && left != Map.GROUND_HILL_LEFT) { // left edge
+                    visual = TILE_LEFT;
+                } else if (right != Map.GROUND && right != Map.GROUND_HILL_RIGHT) { // right edge
+                    visual = TILE_RIGHT;
+                } else {
+                    visual = TILE_MID;
+                }
 
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/" + name +"/center.png"));
-        center = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
+            } else {
 
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/" + name +"/right.png"));
-        right = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
+                if (above == Map.GROUND_HILL_RIGHT) {
+                    visual = TILE_HILL_RIGHT2;
+                } else if (above == Map.GROUND_HILL_LEFT) {
+                    visual = TILE_HILL_LEFT2;
+                } else {
+                    visual = TILE_CENTER;
+                }
 
-        left = Util.getFlippedImage(right);
+            }
+            break;
 
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/" + name + "/mid.png"));
-        mid = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
+            case Map.START:
+            visual = TILE_SIGN;
+            break;
 
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/" + name + "/hillRight.png"));
-        hillRight = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
+            case Map.DOOR_CLOSED:
+            visual = TILE_DOOR_CLOSED;
+            break;
 
-        ii = new ImageIcon(getClass().getResource("/resources/images/Tiles/" + name + "/hillRight2.png"));
-        hillRight2 = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
+            case Map.DOOR_OPENED:
+            visual = TILE_DOOR_OPENED;
+            break;
 
-        hillLeft = Util.getFlippedImage(hillRight);
+            case Map.GROUND_HILL_RIGHT:
+            visual = TILE_HILL_RIGHT;
+            break;
+
+            case Map.GROUND_HILL_LEFT:
+            visual = TILE_HILL_LEFT;
+            break;
+
+            default:
+            visual = TILE_NONE;
+        }
+
+        // water flows into the tiles next to it and below it
+        if (tile != Map.GROUND && (tile == Map.WATER || m.get(j - 1, i) == Map.WATER || m.get(j + 1, i) == Map.WATER || m.get(j, i - 1) == Map.WATER)) {
+            visual |= WATER_OVERLAY;
+        }
 
-        hillLeft2 = Util.getFlippedImage(hillRight2);
+        return visual;
     }
 }
@@ -0,0 +1,131 @@
+package sotasadventure;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * The tool that converts the stages in the properties file into the binary stage file.
+ * Run it from the root of the repository after changing resources/stages.properties:
+ * <pre>
+ * java -cp out:. sotasadventure.StageConverter resources/stages.properties resources/stages.bin
+ * </pre>
+ * The format of the binary stage file is described in BinaryStageLoader.
+ *
+ * @author Sota Nishiyama
+ */
+public class StageConverter {
+
+    /**
+     * Converts the stages.
+     * @param args the path of the properties file and the path of the binary stage file
+     */
+    public static void main(String[] args) throws IOException {
+        String source = args.length > 0 ? args[0] : "resources/stages.properties";
+        String destination = args.length > 1 ? args[1] : "resources/stages.bin";
+
+        HashMap<String, Stage> stages = StageLoader.load(new FileInputStream(source));
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(destination)));
+        try {
+            write(stages, out);
+        } finally {
+            out.close();
+        }
+        System.out.println("converted " + stages.size() + " stages into " + destination);
+    }
+
+    /**
+     * Writes stages in the binary stage format.
+     * @param stages the stages by their names
+     * @param out the stream to write to
+     * @throws IOException if the stages cannot be written
+     */
+    public static void write(HashMap<String, Stage> stages, DataOutputStream out) throws IOException {
+        out.writeInt(BinaryStageLoader.MAGIC);
+        out.writeShort(BinaryStageLoader.VERSION);
+        out.writeShort(stages.size());
+
+        // sort stages by name so that the same stages always make the same file
+        for (Stage stage: new TreeMap<String, Stage>(stages).values()) {
+            byte[] name = stage.name.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+
+            out.writeInt(stage.timeLimit);
+            out.writeInt(stage.spaceShipSpeed);
+            out.writeInt(stage.enemySpeed);
+            out.writeDouble(stage.friction);
+
+            out.writeShort(stage.map.length);
+            for (int k = 0; k < stage.map.length; k++) {
+                out.write(encodeTiles(stage.map[k]));
+
+                byte[] spawns = encodeSpawns(stage, k);
+                out.writeInt(spawns.length);
+                out.write(spawns);
+            }
+        }
+    }
+
+    /**
+     * Encodes the rows of a map with run-length encoding.
+     */
+    private static byte[] encodeTiles(TileLayer map) throws IOException {
+        int width = map.getWidth();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(width);
+        out.writeInt(map.getHeight());
+
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        for (int i = 0; i < map.getHeight(); i++) {
+            int j = 0;
+            while (j < width) {
+                int tile = map.get(j, i);
+
+                int run = 1;
+                while (j + run < width && map.get(j + run, i) == tile && run < 255) {
+                    run++;
+                }
+                rows.write(run);
+                rows.write(tile);
+                j += run;
+            }
+        }
+        out.writeInt(rows.size());
+        rows.writeTo(out);
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes the tiles where Sota, the space ship, enemies, and coins appear, which the stage has found.
+     */
+    private static byte[] encodeSpawns(Stage stage, int k) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(stage.startXs[k]);
+        out.writeInt(stage.startYs[k]);
+        out.writeInt(stage.shipXs[k]);
+        out.writeInt(stage.shipYs[k]);
+        writeTiles(out, stage.enemies[k]);
+        writeTiles(out, stage.coins[k]);
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeTiles(DataOutputStream out, int[] tiles) throws IOException {
+        out.writeInt(tiles.length / 2);
+        for (int tile: tiles) {
+            out.writeInt(tile);
+        }
+    }
+}
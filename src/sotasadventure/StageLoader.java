@@ -0,0 +1,279 @@
+package sotasadventure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The class that reads all stages from the properties file in a single pass.
+ * The file is read as a stream of characters, and tiles are put into the arrays of the maps as they are read.
+ *
+ * Each property is a stage, whose value consists of maps in square brackets, rows of tiles in curly brackets,
+ * and the settings of the stage, which are a name followed by a number:
+ * <pre>
+ * name=\
+ *     [\
+ *         { 0  0  1}\
+ *     ]\
+ *     timeLimit 180\
+ *     spaceShipSpeed 0\
+ *     enemySpeed 10\
+ *     friction .7
+ * </pre>
+ *
+ * @author Sota Nishiyama
+ */
+public class StageLoader {
+    private static final int EOF = -1;
+
+    private Reader reader;
+    private char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    // the current character, with line continuations replaced by a space
+    private int current;
+    private int line = 1;
+
+    private int[] row = new int[64];
+
+    private StageLoader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads all stages in the properties file.
+     * @param path the path of the properties file
+     * @return HashMap<String, Stage> the stages by their names
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static HashMap<String, Stage> load(String path) throws IOException {
+        InputStream input = StageLoader.class.getResourceAsStream(path);
+        if (input == null) {
+            throw new IOException(path + " is not found");
+        }
+        return load(input);
+    }
+
+    /**
+     * Reads all stages from the stream of a properties file and closes it.
+     * @param input the stream of the properties file
+     * @return HashMap<String, Stage> the stages by their names
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static HashMap<String, Stage> load(InputStream input) throws IOException {
+        // properties files are read in ISO 8859-1 like Properties.load does
+        Reader reader = new InputStreamReader(input, "ISO-8859-1");
+        try {
+            return new StageLoader(reader).readStages();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads every property of the file as a stage.
+     */
+    private HashMap<String, Stage> readStages() throws IOException {
+        HashMap<String, Stage> stages = new HashMap<String, Stage>();
+
+        advance();
+        while (true) {
+            while (isWhitespace(current) || current == '\n' || current == '\r') {
+                advance();
+            }
+            if (current == EOF) break;
+
+            // skip comments
+            if (current == '#' || current == '!') {
+                while (current != '\n' && current != '\r' && current != EOF) {
+                    advance();
+                }
+                continue;
+            }
+
+            String name = readWord();
+            while (isWhitespace(current)) {
+                advance();
+            }
+            if (current != '=' && current != ':') {
+                throw error("'=' is expected after " + name);
+            }
+            advance();
+
+            stages.put(name, readStage(name));
+        }
+        return stages;
+    }
+
+    /**
+     * Reads the maps and the settings of a stage until the end of the property.
+     */
+    private Stage readStage(String name) throws IOException {
+        ArrayList<TileLayer> maps = new ArrayList<TileLayer>();
+        ArrayList<int[]> rows = null;
+        int rowLength = -1;
+
+        int timeLimit = 0;
+        int spaceShipSpeed = 0;
+        int enemySpeed = 0;
+        double friction = 0;
+
+        while (current != '\n' && current != '\r' && current != EOF) {
+            if (isWhitespace(current)) {
+                advance();
+            } else if (current == '[') {
+                rows = new ArrayList<int[]>();
+                advance();
+            } else if (current == ']') {
+                if (rows == null || rowLength != -1) throw error("unexpected ']'");
+                try {
+                    maps.add(TileLayer.of(rows.toArray(new int[rows.size()][]), Map.GROUND));
+                } catch (IllegalArgumentException e) {
+                    throw error(e.getMessage() + " in a map of " + name);
+                }
+                rows = null;
+                advance();
+            } else if (current == '{') {
+                if (rows == null || rowLength != -1) throw error("unexpected '{'");
+                rowLength = 0;
+                advance();
+            } else if (current == '}') {
+                if (rowLength == -1) throw error("unexpected '}'");
+                rows.add(Arrays.copyOf(row, rowLength));
+                rowLength = -1;
+                advance();
+            } else if (isDigit(current)) {
+                if (rowLength == -1) throw error("a tile is out of a row");
+                if (rowLength == row.length) {
+                    row = Arrays.copyOf(row, row.length * 2);
+                }
+                row[rowLength++] = readInt();
+            } else if (Character.isLetter(current)) {
+                String key = readWord();
+                while (isWhitespace(current)) {
+                    advance();
+                }
+                String value = readNumber();
+
+                try {
+                    if (key.equals("timeLimit")) {
+                        timeLimit = Integer.parseInt(value);
+                    } else if (key.equals("spaceShipSpeed")) {
+                        spaceShipSpeed = Integer.parseInt(value);
+                    } else if (key.equals("enemySpeed")) {
+                        enemySpeed = Integer.parseInt(value);
+                    } else if (key.equals("friction")) {
+                        friction = Double.parseDouble(value);
+                    } else {
+                        throw error("unknown setting " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw error("invalid value of " + key + ": " + value);
+                }
+            } else {
+                throw error("unexpected '" + (char) current + "'");
+            }
+        }
+
+        if (rows != null || rowLength != -1) {
+            throw error("the last map of " + name + " is not closed");
+        }
+        return new Stage(name, maps.toArray(new TileLayer[maps.size()]), timeLimit, spaceShipSpeed, enemySpeed, friction);
+    }
+
+    /**
+     * Reads a non-negative integer.
+     */
+    private int readInt() throws IOException {
+        int value = 0;
+        while (isDigit(current)) {
+            value = value * 10 + (current - '0');
+            advance();
+        }
+        return value;
+    }
+
+    /**
+     * Reads a number as it is written.
+     */
+    private String readNumber() throws IOException {
+        StringBuilder number = new StringBuilder();
+        while (isDigit(current) || current == '.' || current == '-') {
+            number.append((char) current);
+            advance();
+        }
+        return number.toString();
+    }
+
+    /**
+     * Reads a name.
+     */
+    private String readWord() throws IOException {
+        StringBuilder word = new StringBuilder();
+        while (current != EOF && current != '=' && current != ':' && current != '\n' && current != '\r' && !isWhitespace(current)) {
+            word.append((char) current);
+            advance();
+        }
+        return word.toString();
+    }
+
+    /**
+     * Moves to the next character, joining lines which end with a backslash.
+     */
+    private void advance() throws IOException {
+        int c = read();
+
+        if (c == '\\' && (peek() == '\n' || peek() == '\r')) {
+            if (read() == '\r' && peek() == '\n') {
+                read();
+            }
+            line++;
+
+            // leading whitespace of a continued line is ignored
+            while (isWhitespace(peek())) {
+                read();
+            }
+            c = ' ';
+        } else if (c == '\n') {
+            line++;
+        }
+        current = c;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != EOF) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position];
+    }
+
+    private IOException error(String message) {
+        return new IOException("stages, line " + line + ": " + message);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isDigit(int c) {
+        return '0' <= c && c <= '9';
+    }
+}
@@ -2,68 +2,78 @@ package sotasadventure;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.prefs.Preferences;
 
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
-import javax.swing.ImageIcon;
-
 /**
  * The class that deals with each stage.
+ * It passes input to the World, plays the sounds it asks for, and draws it from snapshots.
  * @author Sota Nishiyama
  */
 public class StageState extends State {
+    private static final Font TITLE_FONT = new Font("Consolas", Font.PLAIN, 150);
+    private static final Font MESSAGE_FONT = new Font("Consolas", Font.PLAIN, 50);
+    private static final Font PROFILER_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 14);
+    private static final Color PROFILER_BACKGROUND = new Color(0, 0, 0, 160);
+    // the numbers of the profiler are updated twice a second, since they are sorted to get the percentiles
+    private static final long PROFILER_REFRESH = 500000000L;
+
     private StateMachine gameMode;
 
-    private boolean run;
-    private boolean gameOver;
-    private boolean gameClear;
+    private World world = new World();
 
-    private Sota sota;
-    private ArrayList<Enemy> enemies;
-    private SpaceShip spaceShip;
+    // filled by the game loop and read by the renderer
+    private SnapshotBuffer snapshots = new SnapshotBuffer();
+    private WorldRenderer worldRenderer;
 
-    private ArrayList<String> movement = new ArrayList<String>();
+    private Input input = new Input();
 
-    private Map map = new Map();
+    private Profiler tickProfiler = new Profiler("tick", Profiler.TICK_PHASES);
+    private Profiler renderProfiler = new Profiler("render", Profiler.RENDER_PHASES);
+    // F3 shows the times of the phases over the stage
+    private volatile boolean profilerVisible;
+    private String[] profilerLines = new String[0];
+    private long profilerRefreshed;
+    // F4 writes the times into files, and the result is shown at the bottom of the profiler
+    private volatile String profilerMessage;
 
-    private int timeLimit;
-    private double startTime;
-    private int timeRemaining;
+    // the recording of the current stage, if stages are recorded
+    private Replay replay;
 
-    private int lives;
+    private MapRenderer mapRenderer;
 
-    private ArrayList<int[]> coins = new ArrayList<int[]>();
-    private int earnedCoins = 0;
+    private volatile double alpha;
 
-    private ArrayList<int[]> gems = new ArrayList<int[]>();
-    private int earnedGems = 0;
+    private ActiveRenderer activeRenderer;
 
-    private Image bg;
+    // drawn from the back to the front
+    private BackgroundLayer[] backgroundLayers;
     private Image healthImage;
     private Image coinImage;
     private Image gemImage;
     private Image clockImage;
 
-    private Clip healthSound;
-    private Clip coinSound;
-    private Clip gemSound;
-    private Clip gameStartSound;
-    private Clip gameClearSound;
-    private Clip gameOverSound;
+    private Hud hud = new Hud(1200);
+    private int livesItem;
+    private int coinsItem;
+    private int gemsItem;
+    private int timeItem;
+
+    private AudioMixer mixer = AudioMixer.getShared();
+    // indexed by the sounds of World
+    private Sound[] sounds = new Sound[World.SOUND_COUNT];
+    private Sound gameStartSound;
 
     /**
-     * Instanciates characters, loads resources, and adds key listener.
+     * Loads resources and adds key listener.
      * @param gameMode The state machine of the game
      */
     public StageState(StateMachine gameMode) {
@@ -71,9 +81,10 @@ public class StageState extends State {
 
         loadResources();
 
-        // characters
-        sota = new Sota(Constants.TILE_SIZE, Constants.TILE_SIZE);
-        spaceShip = new SpaceShip(Constants.TILE_SIZE * 5, Constants.TILE_SIZE * 3);
+        world.setProfiler(tickProfiler);
+
+        mapRenderer = new MapRenderer(world.getMap());
+        worldRenderer = new WorldRenderer(world.getSota(), Constants.TILE_SIZE, Constants.TILE_SIZE, world.getSpaceShip());
 
         // add key listener to move Sota
         addKeyListener(new KeyListener() {
@@ -82,430 +93,309 @@ public class StageState extends State {
 
             @Override
             public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    // the world is only read by the game loop, so whether the stage is over is checked there
+                    gameMode.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (world.isGameOver() || world.isGameClear()) {
+                                gameMode.change("worldmap");
+                            }
+                        }
+                    });
+                    return;
+                }
 
-                switch (e.getKeyCode()) {
-                    case KeyEvent.VK_RIGHT:
-                    if (!movement.contains("right")) movement.add("right");
-                    break;
-
-                    case KeyEvent.VK_LEFT:
-                    if (!movement.contains("left")) movement.add("left");
-                    break;
+                if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    profilerVisible = !profilerVisible;
+                    return;
+                }
 
-                    case KeyEvent.VK_UP:
-                    if (!movement.contains("up")) movement.add("up");
-                    break;
+                if (e.getKeyCode() == KeyEvent.VK_F4) {
+                    writeProfiles();
+                    return;
+                }
 
-                    case KeyEvent.VK_ENTER:
-                    if (gameOver || gameClear) {
-                        gameMode.change("worldmap");
-                    }
-                    break;
+                int button = getButton(e.getKeyCode());
+                if (button != 0) {
+                    input.press(button, System.nanoTime());
                 }
             }
 
             @Override
             public void keyReleased(KeyEvent e) {
-
-                switch (e.getKeyCode()) {
-                    case KeyEvent.VK_RIGHT:
-                    movement.remove("right");
-                    break;
-
-                    case KeyEvent.VK_LEFT:
-                    movement.remove("left");
-                    break;
-
-                    case KeyEvent.VK_UP:
-                    movement.remove("up");
-                    break;
-
-                    case KeyEvent.VK_F:
-                    if (!movement.contains("fire")) movement.add("fire");
-                    break;
-
-                    case KeyEvent.VK_A:
-                    if (!movement.contains("attack")) movement.add("attack");
+                int button = getButton(e.getKeyCode());
+                if (button != 0) {
+                    input.release(button, System.nanoTime());
                 }
             }
         });
 
         setFocusable(true);
-    }
-
-    @Override
-    public void update(double elapsedTime) {
-        if (!run) return;
 
-        if (startTime == -1) {
-            startTime = elapsedTime;
-        }
-        timeRemaining = (int) (timeLimit - elapsedTime + startTime);
-        if (timeRemaining <= 0) {
-            sota.alive = false;
-        }
-
-        // enter the door
-        if (movement.contains("up") &&
-            (map.getTile(sota.position.x / Constants.TILE_SIZE, sota.position.y / Constants.TILE_SIZE) == Map.DOOR_CLOSED || map.getTile(sota.position.x / Constants.TILE_SIZE + 1, sota.position.y / Constants.TILE_SIZE) == Map.DOOR_CLOSED)) {
-            map.next();
-            sota.init(map);
-            spaceShip.init(map.getSpaceShipPosition(), map.getSpaceShipSpeed());
-            enemies = map.getEnemies(Constants.TILE_SIZE, Constants.TILE_SIZE);
-            coins = map.getCoins();
-            gems.clear();
-        }
-
-        // move objects
-        sota.move(movement, elapsedTime);
-
-        for (Enemy enemy: enemies) {
-            if (enemy.alive) {
-                enemy.move(elapsedTime);
-            }
-        }
-
-        if (spaceShip.alive) {
-            spaceShip.move(elapsedTime);
-            spaceShip.deployEnemies(enemies, elapsedTime, Constants.TILE_SIZE, Constants.TILE_SIZE, map.getEnemySpeed());
-        }
-
-        // solve collision between objects and walls
-        sota.solveCollisionAgainstWalls(map);
-
-        for (Enemy enemy: enemies) {
-            if (enemy.alive) {
-                enemy.solveCollisionAgainstWalls(map);
-            }
+        if (Constants.ACTIVE_RENDERING) {
+            activeRenderer = new ActiveRenderer(this);
         }
+    }
 
-        if (spaceShip.alive) {
-            spaceShip.solveCollisionAgainstWalls(map);
+    /**
+     * Returns the button of the given key.
+     * @param keyCode the code of the key
+     * @return int the button, or 0 if the key is not used to move Sota
+     */
+    private static int getButton(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_RIGHT: return Input.RIGHT;
+            case KeyEvent.VK_LEFT: return Input.LEFT;
+            case KeyEvent.VK_UP: return Input.UP;
+            case KeyEvent.VK_F: return Input.FIRE;
+            case KeyEvent.VK_A: return Input.ATTACK;
+            default: return 0;
         }
+    }
 
-        // solve collision between an enemy and another enemy
-        for (int i = 0; i < enemies.size() - 1; i++) {
-            Enemy enemy1 = enemies.get(i);
-            if (!enemy1.alive) continue;
-
-            for (int j = i + 1; j < enemies.size(); j++) {
-                Enemy enemy2 = enemies.get(j);
-                if (!enemy2.alive) continue;
-
-                if (enemy1.position.y <= enemy2.position.y + enemy2.height && enemy1.position.y + enemy1.height >= enemy2.position.y &&
-                    enemy1.position.x <= enemy2.position.x + enemy2.width && enemy1.position.x + enemy1.width >= enemy2.position.x) {
-                    enemy1.velocity.x *= -1;
-                    enemy2.velocity.x *= -1;
-                    if (enemy1.position.x < enemy2.position.x) {
-                        enemy1.position.x = enemy2.position.x - enemy1.width;
-                    } else {
-                        enemy2.position.x = enemy1.position.x - enemy2.width;
-                    }
-                }
-            }
-        }
+    @Override
+    public void update(double elapsedTime) {
+        // drain the input even when the game is over so that old presses do not pile up
+        tickProfiler.begin();
 
-        // solve collision between Sota and an enemy
-        for (Enemy enemy: enemies) {
-            if (!enemy.alive) continue;
+        int buttons = input.poll(System.nanoTime());
+        tickProfiler.mark(Profiler.INPUT);
 
-            if (sota.position.x <= enemy.position.x + enemy.width && sota.position.x + sota.width >= enemy.position.x &&
-                sota.position.y <= enemy.position.y + enemy.height && sota.position.y + sota.height >= enemy.position.y) {
-                sota.attacked(elapsedTime, enemy.damage);
-            }
+        boolean running = world.isRunning();
+        world.step(elapsedTime, buttons);
+        if (replay != null && running) {
+            replay.record(elapsedTime, buttons, world);
         }
-
-        // collision detection against the space ship
-        if (spaceShip.alive) {
-            solveSotasCollisionAgainstShip(elapsedTime);
+        for (int i = 0; i < world.getSoundCount(); i++) {
+            mixer.play(sounds[world.getSound(i)]);
         }
 
-        // solve collision between Sota and walls
-        sota.solveCollisionAgainstWalls(map);
+        publishSnapshot();
+        tickProfiler.mark(Profiler.SNAPSHOT);
 
-        // bullets
-        bulletLoop: for (int i = 0; i < sota.bullets.size(); i++) {
-            Bullet bullet = sota.bullets.get(i);
-
-            bullet.move(elapsedTime);
-            if (!bullet.alive) {
-                sota.bullets.remove(bullet);
-                i--;
-                continue;
-            }
-
-            int x = bullet.position.x;
-            int y = bullet.position.y;
-
-            // hit the wall
-            if (map.getTile(x / Constants.TILE_SIZE, y / Constants.TILE_SIZE) == Map.GROUND ||
-                (map.getTile(x / Constants.TILE_SIZE, y / Constants.TILE_SIZE) == Map.GROUND_HILL_LEFT && Constants.TILE_SIZE - x % Constants.TILE_SIZE < y % Constants.TILE_SIZE) ||
-                (map.getTile(x / Constants.TILE_SIZE, y / Constants.TILE_SIZE) == Map.GROUND_HILL_RIGHT && x % Constants.TILE_SIZE < y % Constants.TILE_SIZE)) {
-                sota.bullets.remove(bullet);
-                i--;
-                continue;
-            }
-
-            for (Enemy enemy: enemies) {
-                if (!enemy.alive) continue;
-
-                if (enemy.position.x <= x && x <= enemy.position.x + enemy.width &&
-                    enemy.position.y <= y && y <= enemy.position.y + enemy.height) {
-                    enemy.attacked(elapsedTime, bullet.damage);
-                    if (!enemy.alive) {
-                        gems.add(new int[] {enemy.position.x, enemy.position.y});
-                    }
-                    sota.bullets.remove(bullet);
-                    i--;
-                    continue bulletLoop;
-                }
-            }
-            if (spaceShip.alive) {
-                if (spaceShip.position.x <= x && x <= spaceShip.position.x + spaceShip.width &&
-                    spaceShip.position.y <= y && y <= spaceShip.position.y + spaceShip.height) {
-                    spaceShip.attacked(elapsedTime, bullet.damage);
-                    if (!spaceShip.alive) {
-                        gameClear = true;
-                        run = false;
-                        gameClearSound.setFramePosition(0);
-                        gameClearSound.start();
-                    }
-                    sota.bullets.remove(bullet);
-                    i--;
-                    continue;
-                }
-            }
-        }
+        tickProfiler.end();
+    }
 
-        // sword
-        if (sota.sword) {
-            if (sota.facingRight) {
-                sota.swordPosition.x = sota.position.x + sota.width;
-            } else {
-                sota.swordPosition.x = sota.position.x - sota.swordWidth;
-            }
-            sota.swordPosition.y = sota.position.y + sota.height / 2 - sota.swordHeight / 2;
+    /**
+     * Copies what is drawn from the world into the back snapshot and publishes it to the renderer.
+     */
+    private void publishSnapshot() {
+        world.fillSnapshot(snapshots.getBack());
+        snapshots.publish();
+    }
 
-            for (Enemy enemy: enemies) {
-                if (!enemy.alive) continue;
+    @Override
+    public void render() {
+        render(1);
+    }
 
-                if (sota.swordPosition.y <= enemy.position.y + enemy.height && sota.swordPosition.y + sota.swordHeight >= enemy.position.y &&
-                    sota.swordPosition.x <= enemy.position.x + enemy.width && sota.swordPosition.x + sota.swordWidth >= enemy.position.x) {
-                    enemy.attacked(elapsedTime, sota.swordDamage);
-                    if (!enemy.alive) {
-                        gems.add(new int[] {enemy.position.x, enemy.position.y});
-                    }
-                }
-            }
-            if (spaceShip.alive) {
-                if (sota.swordPosition.y <= spaceShip.position.y + spaceShip.height && sota.swordPosition.y + sota.swordHeight >= spaceShip.position.y &&
-                    sota.swordPosition.x <= spaceShip.position.x + spaceShip.width && sota.swordPosition.x + sota.swordWidth >= spaceShip.position.x) {
-                    spaceShip.attacked(elapsedTime, sota.swordDamage);
-                    if (!spaceShip.alive) {
-                        gameClear = true;
-                        run = false;
-                        gameClearSound.setFramePosition(0);
-                        gameClearSound.start();
-                    }
-                }
-            }
-        }
+    @Override
+    public void render(double alpha) {
+        // sprites stay still once the game is over
+        this.alpha = world.isRunning() ? alpha : 1;
 
-        // get coins
-        for (int i = 0; i < coins.size(); i++) {
-            int[] coinPosition = coins.get(i);
-            if (sota.position.x <= coinPosition[0] + Constants.TILE_SIZE / 2 && coinPosition[0] + Constants.TILE_SIZE / 2 <= sota.position.x + Constants.TILE_SIZE &&
-                sota.position.y <= coinPosition[1] + Constants.TILE_SIZE / 2 && coinPosition[1] + Constants.TILE_SIZE / 2 <= sota.position.y + Constants.TILE_SIZE) {
-                coins.remove(i--);
-                earnedCoins++;
-                coinSound.setFramePosition(0);
-                coinSound.start();
-                if (earnedCoins == Constants.COIN_MAX) {
-                    earnedCoins = 0;
-                    lives++;
-                    if (lives == Constants.LIFE_MAX) {
-                        lives = Constants.LIFE_MAX - 1;
-                    }
-                    healthSound.setFramePosition(0);
-                    healthSound.start();
-                }
-            }
+        // let Swing paint the state when the frame cannot be shown actively
+        if (activeRenderer == null || !activeRenderer.render()) {
+            repaint();
         }
+    }
 
-        // get gems
-        for (int i = 0; i < gems.size(); i++) {
-            int[] gemPosition = gems.get(i);
-            if (sota.position.x <= gemPosition[0] + Constants.TILE_SIZE / 2 && gemPosition[0] + Constants.TILE_SIZE / 2 <= sota.position.x + Constants.TILE_SIZE &&
-                sota.position.y <= gemPosition[1] + Constants.TILE_SIZE / 2 && gemPosition[1] + Constants.TILE_SIZE / 2 <= sota.position.y + Constants.TILE_SIZE) {
-                gems.remove(i--);
-                earnedGems++;
-                gemSound.setFramePosition(0);
-                gemSound.start();
-                if (earnedGems == Constants.GEM_MAX) {
-                    earnedGems = 0;
-                    lives++;
-                    if (lives == Constants.LIFE_MAX) {
-                        lives = Constants.LIFE_MAX - 1;
-                    }
-                    healthSound.setFramePosition(0);
-                    healthSound.start();
-                }
+    @Override
+    public void paintComponent(Graphics g) {
+        // frames are drawn by the game loop when rendered actively, and Swing only shows the last one
+        if (activeRenderer != null) {
+            if (!activeRenderer.paint(g)) {
+                super.paintComponent(g);
             }
+            return;
         }
 
-        if (!sota.alive) {
-            gameOver = true;
-            lives--;
-            run = false;
-            gameOverSound.setFramePosition(0);
-            gameOverSound.start();
-        }
-    }
-
-    @Override
-    public void render() {
-        repaint();
+        super.paintComponent(g);
+        drawFrame(g);
     }
 
     @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
+    public void drawFrame(Graphics g) {
         Dimension d = getSize();
         int height = (int) d.getHeight();
         int width = (int) d.getWidth();
 
-        int mapWidth = map.getWidth();
-        int mapHeight = map.getHeight();
+        WorldSnapshot snapshot = snapshots.getFront();
+        if (snapshot == null) return;
 
-        int mapX;
-        int mapY;
+        renderProfiler.begin();
 
-        if (sota.position.x < width / 2) {
-            mapX = 0;
-        } else if (sota.position.x > mapWidth - width / 2) {
-            mapX = width - mapWidth;
-        } else {
-            mapX = width / 2 - sota.position.x;
-        }
+        int mapWidth = snapshot.mapWidth;
+        int mapHeight = snapshot.mapHeight;
 
-        if (sota.position.y < height / 2) {
-            mapY = 0;
-        } else if (sota.position.y > (mapHeight - Constants.TILE_SIZE) - height / 2) {
-            mapY = height - (mapHeight - Constants.TILE_SIZE);
-        } else {
-            mapY = height / 2 - sota.position.y;
-        }
+        double alpha = this.alpha;
+        int sota = snapshot.spriteCount - 1;
+        int sotaX = snapshot.interpolateX(sota, alpha);
+        int sotaY = snapshot.interpolateY(sota, alpha);
+
+        int mapX = MapRenderer.getMapX(sotaX, mapWidth, width);
+        int mapY = MapRenderer.getMapY(sotaY, mapHeight, height);
 
         g.clearRect(0, 0, width, height);
 
         // draw background
-        int i, j;
-        for (i = 0; i < (int) (mapWidth / 256) + 1; i++) {
-            for (j = 0; j < (int) (mapHeight / 256) + 1; j++) {
-                g.drawImage(bg, i * 256, j * 256, null);
-            }
+        for (BackgroundLayer layer: backgroundLayers) {
+            layer.draw(g, mapX, mapY, width, height);
         }
+        renderProfiler.mark(Profiler.BACKGROUND);
 
         // draw the map
-        map.draw(g, mapX, mapY);
-
-        // draw objects
-        if (spaceShip.alive) {
-            spaceShip.draw(g, mapX, mapY);
-        }
-
-        for (Enemy enemy: enemies) {
-            if (enemy.alive) {
-                enemy.draw(g, mapX, mapY);
-            }
-        }
-
-        sota.draw(g, mapX, mapY);
+        mapRenderer.draw(g, snapshot.stage, snapshot.stageNum, mapX, mapY, width, height);
+        renderProfiler.mark(Profiler.MAP);
 
-        // draw resources
-        for (int[] coinPosition: coins) {
-            g.drawImage(coinImage, coinPosition[0] + mapX, coinPosition[1] + mapY, null);
-        }
-
-        for (int[] gemPosition: gems) {
-            g.drawImage(gemImage, gemPosition[0] + mapX, gemPosition[1] + mapY, null);
-        }
-
-        g.setFont(new Font("Consolas", Font.PLAIN, 30));
-        g.setColor(Color.WHITE);
-        g.drawImage(healthImage, 10, 5, null);
-        g.drawString(" x " + lives, 50, 40);
+        // draw objects and resources
+        worldRenderer.draw(g, snapshot, mapX, mapY, width, height, alpha);
+        renderProfiler.mark(Profiler.SPRITES);
 
-        g.drawImage(coinImage, 150, 5, null);
-        g.drawString(" x " + earnedCoins, 190, 40);
-
-        g.drawImage(gemImage, 290, 5, null);
-        g.drawString(" x " + earnedGems, 330, 40);
-
-        g.drawImage(clockImage, 1000, 5, null);
-        g.drawString(timeRemaining + "", 1040, 40);
+        hud.set(livesItem, snapshot.lives);
+        hud.set(coinsItem, snapshot.earnedCoins);
+        hud.set(gemsItem, snapshot.earnedGems);
+        hud.set(timeItem, snapshot.timeRemaining);
+        hud.draw(g);
 
         // draw messages
-        if (gameOver) {
-            g.setFont(new Font("Consolas", Font.PLAIN, 150));
+        if (snapshot.gameOver) {
+            g.setFont(TITLE_FONT);
             g.setColor(Color.WHITE);
             g.drawString("GAME OVER!", 250, 200);
-            g.setFont(new Font("Consolas", Font.PLAIN, 50));
-            if (lives == 0) {
+            g.setFont(MESSAGE_FONT);
+            if (snapshot.lives == 0) {
                 g.drawString("YOU LOST ALL LIVES. ALL PROGRESS WILL BE RESET.", 100, 400);
             }
             g.drawString("PRESS ENTER TO GO TO THE WORLD MAP", 150, 500);
-        } else if (gameClear) {
-            g.setFont(new Font("Consolas", Font.PLAIN, 150));
+        } else if (snapshot.gameClear) {
+            g.setFont(TITLE_FONT);
             g.setColor(Color.WHITE);
             g.drawString("GAME CLEAR!", 250, 200);
-            g.setFont(new Font("Consolas", Font.PLAIN, 50));
+            g.setFont(MESSAGE_FONT);
             g.drawString("PRESS ENTER TO GO TO THE WORLD MAP", 150, 400);
         }
+        renderProfiler.mark(Profiler.HUD);
+
+        renderProfiler.end();
+
+        if (profilerVisible) {
+            drawProfiler(g, width);
+        }
     }
 
-    @Override
-    public void enter(String stage) {
-        requestFocus();
+    /**
+     * Draws the 50th and the 99th percentiles of the times of the phases of ticks and renders.
+     */
+    private void drawProfiler(Graphics g, int width) {
+        long now = System.nanoTime();
+        if (now - profilerRefreshed > PROFILER_REFRESH) {
+            profilerRefreshed = now;
+
+            ArrayList<String> lines = new ArrayList<String>();
+            lines.add(String.format("%-12s %7s %7s", "ms", "p50", "p99"));
+            for (Profiler profiler: new Profiler[] {tickProfiler, renderProfiler}) {
+                String[] phases = profiler.getPhases();
+                long[] total = profiler.getPercentiles(phases.length, 50, 99);
+                lines.add(String.format("%-12s %7.2f %7.2f", profiler.getName(), total[0] / 1e6, total[1] / 1e6));
+                for (int i = 0; i < phases.length; i++) {
+                    long[] times = profiler.getPercentiles(i, 50, 99);
+                    lines.add(String.format("  %-10s %7.2f %7.2f", phases[i], times[0] / 1e6, times[1] / 1e6));
+                }
+            }
+            profilerLines = lines.toArray(new String[lines.size()]);
+        }
 
-        map.set(stage);
+        String message = profilerMessage;
+        int lineCount = profilerLines.length + (message == null ? 0 : 1);
 
-        movement.clear();
+        int lineHeight = 16;
+        int x = width - 270;
+        g.setColor(PROFILER_BACKGROUND);
+        g.fillRect(x - 10, 70, 270, lineCount * lineHeight + 10);
+        g.setFont(PROFILER_FONT);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < profilerLines.length; i++) {
+            g.drawString(profilerLines[i], x, 70 + (i + 1) * lineHeight);
+        }
+        if (message != null) {
+            g.drawString(message, x, 70 + lineCount * lineHeight);
+        }
+    }
 
-        timeLimit = map.getTimeLimit();
-        startTime = -1;
+    /**
+     * Writes the times of the last ticks and renders into CSV files.
+     */
+    private void writeProfiles() {
+        long time = System.currentTimeMillis();
+        String message = "wrote *-" + time + ".csv";
+        for (Profiler profiler: new Profiler[] {tickProfiler, renderProfiler}) {
+            File file = new File(Constants.PROFILE_DIR, profiler.getName() + "-" + time + ".csv");
+            try {
+                profiler.writeCsv(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                message = "could not write " + profiler.getName();
+            }
+        }
+        profilerMessage = message;
+    }
 
-        sota.init(map);
-        sota.initHP();
+    @Override
+    public void load(String stage) {
+        input.clear();
 
-        spaceShip.init(map.getSpaceShipPosition(), map.getSpaceShipSpeed());
+        Preferences prefs = Preferences.userNodeForPackage(StageState.class);
+        int lives = prefs.getInt("lives", 5);
+        int earnedCoins = prefs.getInt("coin", 0);
+        int earnedGems = prefs.getInt("gem", 0);
+        world.load(stage, lives, earnedCoins, earnedGems);
 
-        enemies = map.getEnemies(Constants.TILE_SIZE, Constants.TILE_SIZE);
+        if (Constants.REPLAY_DIR != null) {
+            replay = new Replay(stage, lives, earnedCoins, earnedGems, 1000000000L / Constants.TICK_RATE, Replay.CHECKSUM_INTERVAL);
+        }
 
-        coins = map.getCoins();
-        gems.clear();
+        // the game loop is not updating this state yet, so the first frame can be published from here
+        publishSnapshot();
+    }
 
-        run = true;
-        gameOver = gameClear = false;
+    @Override
+    public void enter(String stage) {
+        world.start();
 
-        Preferences prefs = Preferences.userNodeForPackage(StageState.class);
-        lives = prefs.getInt("lives", 5);
-        earnedCoins = prefs.getInt("coin", 0);
-        earnedGems = prefs.getInt("gem", 0);
+        mixer.play(gameStartSound);
+        mixer.playMusic("/resources/music/" + stage + ".wav");
 
-        gameStartSound.setFramePosition(0);
-        gameStartSound.start();
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                requestFocusInWindow();
+            }
+        });
     }
 
     @Override
     public void exit() {
+        if (replay != null) {
+            File file = new File(Constants.REPLAY_DIR, replay.getStage() + "-" + System.currentTimeMillis() + ".replay");
+            try {
+                replay.write(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            replay = null;
+        }
+
         Preferences prefs = Preferences.userNodeForPackage(StageState.class);
+        int lives = world.getLives();
+        int earnedCoins = world.getEarnedCoins();
+        int earnedGems = world.getEarnedGems();
         if (lives == 0) {
             lives = 5;
             earnedCoins = earnedGems = 0;
 
-            for (String stage: map.stages.keySet()) {
+            for (String stage: world.getMap().stages.keySet()) {
                 prefs.put(stage, "not cleared");
             }
         }
@@ -514,79 +404,8 @@ public class StageState extends State {
         prefs.putInt("coin", earnedCoins);
         prefs.putInt("gem", earnedGems);
 
-        if (gameClear) {
-            prefs.put(map.getName(), "cleared");
-        }
-    }
-
-    /**
-     * Solves Sota's collision against the space ship.
-     */
-    private void solveSotasCollisionAgainstShip(double elapsedTime) {
-        if (!sota.alive) return;
-
-        sota.jumping = true;
-
-        // check the ground and the ceiling
-        if (spaceShip.position.x <= sota.position.x && sota.position.x + sota.width <= spaceShip.position.x + spaceShip.width) {
-            if (sota.position.y < spaceShip.position.y && spaceShip.position.y < sota.position.y + sota.height) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                sota.position.y = spaceShip.position.y - sota.height;
-                sota.jumping = false;
-            } else if (sota.position.y < spaceShip.position.y + spaceShip.height && spaceShip.position.y + spaceShip.height < sota.position.y + sota.height) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                sota.position.y = spaceShip.position.y + spaceShip.height;
-            }
-        }
-
-        // check the sides
-        if (spaceShip.position.y <= sota.position.y && sota.position.y + sota.height <= spaceShip.position.y + spaceShip.height) {
-            if (sota.position.x < spaceShip.position.x && spaceShip.position.x < sota.position.x + sota.width) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                sota.position.x = spaceShip.position.x - sota.width;
-            } else if (sota.position.x < spaceShip.position.x + spaceShip.width && spaceShip.position.x + spaceShip.width < sota.position.x + sota.width) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                sota.position.x = spaceShip.position.x + spaceShip.width;
-            }
-        }
-
-        // diagonal collision
-        if (sota.position.x < spaceShip.position.x && spaceShip.position.x < sota.position.x + sota.width) {
-            if (sota.position.y < spaceShip.position.y && spaceShip.position.y < sota.position.y + sota.height) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                if (sota.position.x + sota.width - spaceShip.position.x < sota.position.y + sota.height - spaceShip.position.y) {
-                    sota.position.x = spaceShip.position.x - sota.width;
-                    sota.jumping = false;
-                } else {
-                    sota.position.y = spaceShip.position.y - sota.height;
-                }
-            } else if (sota.position.y < spaceShip.position.y + spaceShip.height && spaceShip.position.y + spaceShip.height < sota.position.y + sota.height) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                if (sota.position.x + sota.width - spaceShip.position.x < spaceShip.position.y + spaceShip.height - sota.position.y) {
-                    sota.position.x = spaceShip.position.x - sota.width;
-                } else {
-                    sota.position.y = spaceShip.position.y + spaceShip.height;
-                }
-            }
-        }
-
-        if (sota.position.x < spaceShip.position.x + spaceShip.width && spaceShip.position.x + spaceShip.width < sota.position.x + sota.width) {
-            if (sota.position.y < spaceShip.position.y && spaceShip.position.y < sota.position.y + sota.height) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                if (sota.position.x + sota.width - spaceShip.position.x < sota.position.y + sota.height - spaceShip.position.y) {
-                    sota.position.x = spaceShip.position.x + spaceShip.width;
-                    sota.jumping = false;
-                } else {
-                    sota.position.y = spaceShip.position.y - sota.height;
-                }
-            } else if (sota.position.y < spaceShip.position.y + spaceShip.height && spaceShip.position.y + spaceShip.height < sota.position.y + sota.height) {
-                sota.attacked(elapsedTime, spaceShip.damage);
-                if (sota.position.x + sota.width - spaceShip.position.x < spaceShip.position.y + spaceShip.height - sota.position.y) {
-                    sota.position.x = spaceShip.position.x + spaceShip.width;
-                } else {
-                    sota.position.y = spaceShip.position.y + spaceShip.height;
-                }
-            }
+        if (world.isGameClear()) {
+            prefs.put(world.getMap().getName(), "cleared");
         }
     }
 
@@ -594,53 +413,28 @@ public class StageState extends State {
      * Loads images and sounds.
      */
     private void loadResources() {
-        ImageIcon ii;
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/bg.png"));
-        bg = ii.getImage();
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/heart.png"));
-        healthImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/coin.png"));
-        coinImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/gem.png"));
-        gemImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/clock.png"));
-        clockImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        try {
-            AudioInputStream audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/coin.wav"));
-            coinSound = AudioSystem.getClip();
-            coinSound.open(audioIn);
-
-            audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/gem.wav"));
-            gemSound = AudioSystem.getClip();
-            gemSound.open(audioIn);
-
-            audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/health.wav"));
-            healthSound = AudioSystem.getClip();
-            healthSound.open(audioIn);
-
-            audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/game-start.wav"));
-            gameStartSound = AudioSystem.getClip();
-            gameStartSound.open(audioIn);
-
-            audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/game-clear.wav"));
-            gameClearSound = AudioSystem.getClip();
-            gameClearSound.open(audioIn);
-
-            audioIn = AudioSystem.getAudioInputStream(getClass().getResource("/resources/audio/game-over.wav"));
-            gameOverSound = AudioSystem.getClip();
-            gameOverSound.open(audioIn);
-        } catch (UnsupportedAudioFileException e) {
-            e.printStackTrace();
-        } catch (LineUnavailableException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // the sky does not scroll
+        backgroundLayers = new BackgroundLayer[] {
+            new BackgroundLayer(Assets.getImage("/resources/images/bg.png"), 0)
+        };
+        healthImage = Assets.getImage("/resources/images/heart.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        coinImage = Assets.getImage("/resources/images/coin.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        gemImage = Assets.getImage("/resources/images/gem.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        clockImage = Assets.getImage("/resources/images/clock.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+
+        livesItem = hud.addItem(healthImage, 10, true);
+        coinsItem = hud.addItem(coinImage, 150, true);
+        gemsItem = hud.addItem(gemImage, 290, true);
+        timeItem = hud.addItem(clockImage, 1000, false);
+
+        sounds[World.SOUND_GUN] = Sound.load("/resources/audio/gun.wav", 3, 1);
+        sounds[World.SOUND_SWORD] = Sound.load("/resources/audio/sword.wav", 3, 1);
+        sounds[World.SOUND_ATTACKED] = Sound.load("/resources/audio/attacked.wav", 2, 2);
+        sounds[World.SOUND_COIN] = Sound.load("/resources/audio/coin.wav", 4, 1);
+        sounds[World.SOUND_GEM] = Sound.load("/resources/audio/gem.wav", 4, 1);
+        sounds[World.SOUND_HEALTH] = Sound.load("/resources/audio/health.wav", 2, 2);
+        sounds[World.SOUND_GAME_CLEAR] = Sound.load("/resources/audio/game-clear.wav", 1, 3);
+        sounds[World.SOUND_GAME_OVER] = Sound.load("/resources/audio/game-over.wav", 1, 3);
+        gameStartSound = Sound.load("/resources/audio/game-start.wav", 1, 3);
     }
 }
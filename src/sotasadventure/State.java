@@ -1,5 +1,7 @@
 package sotasadventure;
 
+import java.awt.Graphics;
+
 import javax.swing.JPanel;
 
 /**
@@ -22,13 +24,38 @@ public abstract class State extends JPanel {
     public void render() {}
 
     /**
-     * Called at the beginning of the state.
+     * Render changes between the last update and the next one.
+     * @param alpha how far the game is between the last update and the next one, from 0 to 1
+     */
+    public void render(double alpha) {
+        render();
+    }
+
+    /**
+     * Draws a whole frame of the state.
+     * Called by the active renderer instead of painting the state through Swing.
+     * @param g the graphics
+     */
+    public void drawFrame(Graphics g) {
+        paintComponent(g);
+    }
+
+    /**
+     * Prepares the state before it begins.
+     * Called on a background thread while no state is updated, so it is the place for slow work,
+     * but it must not touch Swing components.
+     * @param optional the optional variable
+     */
+    public void load(String optional) {}
+
+    /**
+     * Called at the beginning of the state by the game loop.
      * @param optional the optional variable
      */
     public void enter(String optional) {}
 
     /**
-     * Called at the end of the state.
+     * Called at the end of the state by the game loop.
      */
     public void exit() {}
 }
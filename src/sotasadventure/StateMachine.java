@@ -1,7 +1,13 @@
 package sotasadventure;
 
 import java.awt.CardLayout;
+import java.awt.EventQueue;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JPanel;
 
@@ -10,6 +16,12 @@ import javax.swing.JPanel;
  * When updating and rendering contents in the game, methods in this class will be called instead of methods in each State by the game loop.
  * The class sets the current state to currentStage field and operates it through other methods.
  *
+ * Changes of the state can be requested from any thread, but they are queued and applied by the game loop
+ * at the start of a tick, so that they never happen in the middle of an update or a render.
+ * The next state is loaded on a background thread in the meantime, and no state is updated until it is ready.
+ * Only one change can be in progress; changes requested before the next state has been entered are ignored.
+ * If the next state fails to load, the state which was left is entered again.
+ *
  * @author Sota Nishiyama
  */
 public class StateMachine {
@@ -18,6 +30,27 @@ public class StateMachine {
     private State currentState = new EmptyState();
     private JPanel panel;
 
+    // the name of the current state and the optional variable it was entered with, which are null at first
+    private String currentName;
+    private String currentOpt;
+
+    // the state while the next state is being loaded
+    private State loadingState = new EmptyState();
+
+    // set from the request of a change until the next state has been entered
+    private AtomicBoolean changing = new AtomicBoolean();
+
+    private ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+
+    private ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "state-loader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private class EmptyState extends State {
         @Override
         public void update(double elapsedTime) {}
@@ -42,13 +75,27 @@ public class StateMachine {
     }
 
     /**
-     * Calls the update method of the current state.
+     * Applies the queued commands and calls the update method of the current state.
      * @param elapsedTime the time elapsed since the game started
      */
     public void update(double elapsedTime) {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+        }
+
         currentState.update(elapsedTime);
     }
 
+    /**
+     * Queues a command to be run by the game loop at the start of the next tick.
+     * This method can be called from any thread.
+     * @param command the command
+     */
+    public void post(Runnable command) {
+        commands.add(command);
+    }
+
     /**
      * Calls the render method of the current state.
      */
@@ -57,26 +104,98 @@ public class StateMachine {
     }
 
     /**
-     * Changes the current state and give an optional string to the next state.
+     * Calls the render method of the current state with the interpolation factor.
+     * @param alpha how far the game is between the last update and the next one, from 0 to 1
+     */
+    public void render(double alpha) {
+        currentState.render(alpha);
+    }
+
+    /**
+     * Changes the current state at the start of the next tick and give an optional string to the next state.
+     * This method can be called from any thread. It does nothing while another change is in progress.
      * @param name the name of the state which comes next
      * @param opt the optional variable
+     * @return boolean true if the change is started, or false if it is ignored
      */
-    public void change(String name, String opt) {
-        // end the current state
-        currentState.exit();
+    public boolean change(final String name, final String opt) {
+        // a second change could exit the state being loaded, or enter two states
+        if (!changing.compareAndSet(false, true)) {
+            return false;
+        }
+
+        post(new Runnable() {
+            @Override
+            public void run() {
+                final String previousName = currentName;
+                final State previous = currentState;
+                final String previousOpt = currentOpt;
+
+                // end the current state
+                currentState.exit();
+                currentState = loadingState;
+
+                final State next = states.get(name);
+                loader.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            next.load(opt);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+
+                            // go back to the state which was left, so that the game neither stays blank nor stops changing
+                            post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    enter(previousName, previous, previousOpt);
+                                }
+                            });
+                            return;
+                        }
 
-        // start the new state
-        currentState = states.get(name);
-        ((CardLayout) panel.getLayout()).show(panel, name);
+                        // start the new state at the start of the tick after it is loaded
+                        post(new Runnable() {
+                            @Override
+                            public void run() {
+                                enter(name, next, opt);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Makes the loaded state the current one and shows it.
+     */
+    private void enter(final String name, State next, String opt) {
+        currentState = next;
+        currentName = name;
+        currentOpt = opt;
         currentState.enter(opt);
+        changing.set(false);
+
+        // the empty state the machine starts with has no card
+        if (name == null) return;
+
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                ((CardLayout) panel.getLayout()).show(panel, name);
+            }
+        });
     }
 
     /**
      * Changes the current state and give an empty string to the next state.
      * @param name the name of the state which comes next
+     * @return boolean true if the change is started, or false if it is ignored
      */
-    public void change(String name) {
-        change(name, "");
+    public boolean change(String name) {
+        return change(name, "");
     }
 
     /**
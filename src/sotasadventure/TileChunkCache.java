@@ -0,0 +1,205 @@
+package sotasadventure;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The class that keeps the tiles of the current map pre-rendered in square chunks.
+ * Chunks are rendered when they are first drawn and the least recently drawn ones are discarded
+ * when there are more of them than the screen can show, with a column and a row to spare.
+ * Chunks are only touched by the thread which draws the map, but tiles may be invalidated from any thread.
+ *
+ * @author Sota Nishiyama
+ */
+public class TileChunkCache {
+    public static final int CHUNK_SIZE = 8;
+    public static final int CHUNK_PIXELS = CHUNK_SIZE * Constants.TILE_SIZE;
+
+    // stored for chunks which have no tiles to draw
+    private static final Image EMPTY = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private MapRenderer renderer;
+
+    private Stage stage;
+    private int stageNum;
+
+    private ConcurrentLinkedQueue<Long> invalidated = new ConcurrentLinkedQueue<Long>();
+
+    // enough for the window the game opens with, until the size of the screen is given
+    private int maxChunks = getMaxChunks(1200, 600);
+
+    private LinkedHashMap<Long, Image> chunks = new LinkedHashMap<Long, Image>(64, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(java.util.Map.Entry<Long, Image> eldest) {
+            if (size() > maxChunks) {
+                eldest.getValue().flush();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Sets the renderer which draws the tiles of the chunks.
+     * @param renderer the renderer of the map
+     */
+    public TileChunkCache(MapRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Returns the number of chunks kept for a screen of the given size.
+     * @param width the width of the screen
+     * @param height the height of the screen
+     * @return int the number of chunks
+     */
+    public static int getMaxChunks(int width, int height) {
+        // a screen overlaps up to width / CHUNK_PIXELS + 2 columns when it is not aligned to the chunks,
+        // and one more column and row are kept so that scrolling back does not render them again
+        int columns = Math.max(width, 0) / CHUNK_PIXELS + 3;
+        int rows = Math.max(height, 0) / CHUNK_PIXELS + 3;
+        return columns * rows;
+    }
+
+    /**
+     * Keeps as many chunks as a screen of the given size needs, discarding the least recently drawn ones
+     * if there are more of them.
+     * @param width the width of the screen
+     * @param height the height of the screen
+     */
+    public void setScreenSize(int width, int height) {
+        int max = getMaxChunks(width, height);
+        if (max == maxChunks) return;
+
+        maxChunks = max;
+        Iterator<Image> it = chunks.values().iterator();
+        while (chunks.size() > maxChunks) {
+            it.next().flush();
+            it.remove();
+        }
+    }
+
+    /**
+     * Discards all chunks if the given map is not the one the chunks were rendered from,
+     * and the chunks which contain invalidated tiles otherwise.
+     * @param stage the current stage
+     * @param stageNum the number of the current map in the stage
+     */
+    public void sync(Stage stage, int stageNum) {
+        if (!isOf(stage, stageNum)) {
+            clear();
+            invalidated.clear();
+            this.stage = stage;
+            this.stageNum = stageNum;
+        }
+
+        Long tile;
+        while ((tile = invalidated.poll()) != null) {
+            discard((int) (long) tile, (int) (tile >> 32));
+        }
+    }
+
+    /**
+     * Checks if the chunks are rendered from the given map.
+     * @param stage the stage
+     * @param stageNum the number of the map in the stage
+     * @return boolean true if the chunks are of the map
+     */
+    public boolean isOf(Stage stage, int stageNum) {
+        return this.stage == stage && this.stageNum == stageNum;
+    }
+
+    /**
+     * Renders the given chunk unless it is cached, without marking it as drawn.
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkY the y coordinate of the chunk
+     * @return boolean true if the chunk has been rendered now
+     */
+    public boolean prepare(int chunkX, int chunkY) {
+        Long key = key(chunkX, chunkY);
+        if (chunks.containsKey(key)) return false;
+
+        chunks.put(key, render(chunkX, chunkY));
+        return true;
+    }
+
+    /**
+     * Returns the image of the given chunk, rendering it if it is not cached.
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkY the y coordinate of the chunk
+     * @return Image the image of the chunk, or null if the chunk has no tiles to draw
+     */
+    public Image get(int chunkX, int chunkY) {
+        Long key = key(chunkX, chunkY);
+        Image chunk = chunks.get(key);
+
+        if (chunk == null) {
+            chunk = render(chunkX, chunkY);
+            chunks.put(key, chunk);
+        }
+        return chunk == EMPTY ? null : chunk;
+    }
+
+    /**
+     * Marks the chunks which may be affected by a change of the given tile to be rendered again.
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     */
+    public void invalidate(int x, int y) {
+        invalidated.add(key(x, y));
+    }
+
+    /**
+     * Discards the chunks which may be affected by a change of the given tile.
+     */
+    private void discard(int x, int y) {
+        // the neighbors of a tile decide how it looks, and doors are drawn over the tile above them
+        for (int i = y - 1; i <= y + 1; i++) {
+            for (int j = x - 1; j <= x + 1; j++) {
+                if (i < 0 || j < 0) continue;
+
+                Image chunk = chunks.remove(key(j / CHUNK_SIZE, i / CHUNK_SIZE));
+                if (chunk != null) {
+                    chunk.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all chunks.
+     */
+    public void clear() {
+        for (Image chunk: chunks.values()) {
+            chunk.flush();
+        }
+        chunks.clear();
+    }
+
+    /**
+     * Renders the tiles of the given chunk into an image.
+     */
+    private Image render(int chunkX, int chunkY) {
+        BufferedImage chunk = Util.createCompatibleImage(CHUNK_PIXELS, CHUNK_PIXELS);
+        Graphics2D g2 = chunk.createGraphics();
+
+        // render one more row to get the tops of the doors below the chunk
+        int drawn = renderer.drawTiles(g2, stage, stageNum, -chunkX * CHUNK_PIXELS, -chunkY * CHUNK_PIXELS,
+                                       chunkX * CHUNK_SIZE, chunkY * CHUNK_SIZE, (chunkX + 1) * CHUNK_SIZE, (chunkY + 1) * CHUNK_SIZE + 1);
+        g2.dispose();
+
+        if (drawn == 0) {
+            chunk.flush();
+            return EMPTY;
+        }
+        return chunk;
+    }
+
+    private static Long key(int chunkX, int chunkY) {
+        return ((long) chunkY << 32) | (chunkX & 0xffffffffL);
+    }
+}
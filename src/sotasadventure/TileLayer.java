@@ -0,0 +1,111 @@
+package sotasadventure;
+
+/**
+ * The class that keeps a value for each tile of a map, such as its type or how it looks.
+ * The tiles out of the map all have the value of the border, and may be read up to DenseTileLayer.PADDING tiles
+ * away from it. Small maps are kept in memory as a whole by DenseTileLayer, and large ones are read from
+ * the stage file a chunk at a time by ChunkedTileLayer.
+ *
+ * @author Sota Nishiyama
+ */
+public abstract class TileLayer {
+    protected final int width;
+    protected final int height;
+    protected final int border;
+
+    /**
+     * Sets the size of the map.
+     * @param width the width of the map in tiles
+     * @param height the height of the map in tiles
+     * @param border the value of the tiles out of the map, from 0 to 255
+     */
+    protected TileLayer(int width, int height, int border) {
+        checkValue(border);
+
+        this.width = width;
+        this.height = height;
+        this.border = border;
+    }
+
+    /**
+     * Creates a layer kept in memory from rows of values.
+     * @param values the rows of values, which must have the same length
+     * @param border the value of the tiles out of the map, from 0 to 255
+     * @return TileLayer the layer
+     * @throws IllegalArgumentException if the rows have different lengths or a value is out of range
+     */
+    public static TileLayer of(int[][] values, int border) {
+        DenseTileLayer layer = new DenseTileLayer(values.length == 0 ? 0 : values[0].length, values.length, border);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].length != layer.width) {
+                throw new IllegalArgumentException("the rows have different lengths");
+            }
+            for (int j = 0; j < values[i].length; j++) {
+                layer.set(j, i, values[i][j]);
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * Returns the width of the map.
+     * @return int the width in tiles
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the map.
+     * @return int the height in tiles
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the value of a tile.
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @return int the value of the tile, or the value of the border if the tile is out of the map
+     */
+    public abstract int get(int x, int y);
+
+    /**
+     * Changes the value of a tile of the map.
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @param value the new value, from 0 to 255
+     */
+    public abstract void set(int x, int y, int value);
+
+    /**
+     * Throws an exception if the given tile is out of the map.
+     */
+    protected void checkTile(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is out of the map");
+        }
+    }
+
+    /**
+     * Throws an error if the given tile is out of the border of the map, which is never read.
+     * It is called from an assertion, and kept out of get so that get stays small enough to be inlined.
+     * @return boolean true
+     */
+    protected boolean checkBorder(int x, int y) {
+        if (x < -DenseTileLayer.PADDING || x >= width + DenseTileLayer.PADDING || y < -DenseTileLayer.PADDING || y >= height + DenseTileLayer.PADDING) {
+            throw new AssertionError("(" + x + ", " + y + ") is out of the border");
+        }
+        return true;
+    }
+
+    /**
+     * Throws an exception if the given value does not fit in a tile.
+     */
+    protected static void checkValue(int value) {
+        if (value < 0 || value > 255) {
+            throw new IllegalArgumentException("invalid tile " + value);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package sotasadventure;
 
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
@@ -60,4 +62,20 @@ public class Util {
         return flipped;
     }
 
+    /**
+     * Returns a translucent image in the format of the screen, which can be drawn without conversion.
+     * In a headless environment, returns an ARGB image instead.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return BufferedImage the created image
+     */
+    public static BufferedImage createCompatibleImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+            .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
 }
\ No newline at end of file
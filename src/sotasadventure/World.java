@@ -0,0 +1,647 @@
+package sotasadventure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The class that moves everything in a stage.
+ * It has no images or sounds, so it runs without a display and can tick as fast as it is called,
+ * as in tests and benchmarks. StageState shows the world through snapshots and plays the sounds it asks for.
+ *
+ * @author Sota Nishiyama
+ */
+public class World {
+    // the sounds the world asks to play
+    public static final int SOUND_GUN = 0;
+    public static final int SOUND_SWORD = 1;
+    public static final int SOUND_ATTACKED = 2;
+    public static final int SOUND_COIN = 3;
+    public static final int SOUND_GEM = 4;
+    public static final int SOUND_HEALTH = 5;
+    public static final int SOUND_GAME_CLEAR = 6;
+    public static final int SOUND_GAME_OVER = 7;
+    public static final int SOUND_COUNT = 8;
+
+    private boolean running;
+    private boolean gameOver;
+    private boolean gameClear;
+
+    private Sota sota;
+    private ArrayList<Enemy> enemies;
+    private SpaceShip spaceShip;
+
+    private SpatialHash enemyGrid = new SpatialHash(Constants.TILE_SIZE, 1024);
+
+    private Map map = new Map();
+
+    private int timeLimit;
+    private double startTime;
+    private int timeRemaining;
+
+    private int lives;
+
+    private Pickups pickups = new Pickups();
+    private int earnedCoins = 0;
+    private int earnedGems = 0;
+
+    // the next map of the stage, prepared while Sota is in the current one so that entering the door only swaps them
+    private int preparedMap = -1;
+    private ArrayList<Enemy> preparedEnemies;
+    private Pickups preparedPickups = new Pickups();
+
+    // the ticks since the chunks of a large map which are not read any more were last discarded
+    private int ticksSinceDiscard;
+
+    // measures the phases of a tick if it is set
+    private Profiler profiler;
+
+    // the sounds of the last tick
+    private int[] sounds = new int[16];
+    private int soundCount;
+
+    /**
+     * Instanciates characters and loads the stages.
+     */
+    public World() {
+        sota = new Sota(Constants.TILE_SIZE, Constants.TILE_SIZE);
+        spaceShip = new SpaceShip(Constants.TILE_SIZE * 5, Constants.TILE_SIZE * 3);
+    }
+
+    /**
+     * Puts everything at the start of a stage. The game does not run until it is started.
+     * @param stage the name of the stage
+     * @param lives the number of lives
+     * @param earnedCoins the number of coins earned before
+     * @param earnedGems the number of gems earned before
+     */
+    public void load(String stage, int lives, int earnedCoins, int earnedGems) {
+        map.set(stage);
+
+        // nothing is carried over from the last stage, so a stage always plays the same way with the same input
+        sota = new Sota(Constants.TILE_SIZE, Constants.TILE_SIZE);
+        spaceShip = new SpaceShip(Constants.TILE_SIZE * 5, Constants.TILE_SIZE * 3);
+
+        timeLimit = map.getTimeLimit();
+        startTime = -1;
+
+        sota.init(map);
+        sota.initHP();
+
+        spaceShip.init(map.getSpaceShipPosition(), map.getSpaceShipSpeed());
+
+        enemies = map.getEnemies(Constants.TILE_SIZE, Constants.TILE_SIZE);
+
+        map.addCoins(pickups);
+
+        preparedMap = -1;
+        prepareNextMap();
+
+        running = gameOver = gameClear = false;
+        soundCount = 0;
+
+        this.lives = lives;
+        this.earnedCoins = earnedCoins;
+        this.earnedGems = earnedGems;
+    }
+
+    /**
+     * Builds the enemies and the coins of the next map of the stage, unless they are already built.
+     */
+    private void prepareNextMap() {
+        if (preparedMap == map.getStageNum() + 1 || !map.hasNext()) return;
+
+        preparedMap = map.getStageNum() + 1;
+        preparedEnemies = map.getEnemies(preparedMap, Constants.TILE_SIZE, Constants.TILE_SIZE);
+        map.addCoins(preparedMap, preparedPickups);
+    }
+
+    /**
+     * Swaps in the enemies and the coins of the current map, which has just been entered.
+     * They are built here if they have not been prepared.
+     */
+    private void enterPreparedMap() {
+        if (preparedMap != map.getStageNum()) {
+            enemies = map.getEnemies(Constants.TILE_SIZE, Constants.TILE_SIZE);
+            map.addCoins(pickups);
+            return;
+        }
+
+        enemies = preparedEnemies;
+        Pickups previous = pickups;
+        pickups = preparedPickups;
+        preparedPickups = previous;
+
+        preparedMap = -1;
+        preparedEnemies = null;
+    }
+
+    /**
+     * Starts the game.
+     */
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Moves everything in the stage by a tick.
+     * Nothing moves before the game is started or after it is over or cleared.
+     * @param elapsedTime the time elapsed since the game started
+     * @param buttons the buttons of Input for this tick
+     */
+    public void step(double elapsedTime, int buttons) {
+        soundCount = 0;
+        if (!running) return;
+
+        if (startTime == -1) {
+            startTime = elapsedTime;
+        }
+        timeRemaining = (int) (timeLimit - elapsedTime + startTime);
+        if (timeRemaining <= 0) {
+            sota.alive = false;
+        }
+
+        // prepare the next map in the tick after entering a door rather than in the same one
+        prepareNextMap();
+
+        // forget the chunks of a large map which nothing has read for a second
+        if (++ticksSinceDiscard == Constants.TICK_RATE) {
+            ticksSinceDiscard = 0;
+            map.discardUnusedChunks();
+        }
+
+        // enter the door
+        if ((buttons & Input.UP) != 0 &&
+            (map.getTile(sota.position.x / Constants.TILE_SIZE, sota.position.y / Constants.TILE_SIZE) == Map.DOOR_CLOSED || map.getTile(sota.position.x / Constants.TILE_SIZE + 1, sota.position.y / Constants.TILE_SIZE) == Map.DOOR_CLOSED)) {
+            map.next();
+            sota.init(map);
+            spaceShip.init(map.getSpaceShipPosition(), map.getSpaceShipSpeed());
+            enterPreparedMap();
+        }
+
+        // move objects
+        sota.fired = sota.swung = sota.hurt = false;
+        sota.move(buttons, elapsedTime);
+
+        for (Enemy enemy: enemies) {
+            if (enemy.alive) {
+                enemy.move(elapsedTime);
+            }
+        }
+
+        if (spaceShip.alive) {
+            spaceShip.move(elapsedTime);
+            spaceShip.deployEnemies(enemies, elapsedTime, Constants.TILE_SIZE, Constants.TILE_SIZE, map.getEnemySpeed());
+        }
+
+        mark(Profiler.MOVE);
+
+        // solve collision between objects and walls
+        sota.solveCollisionAgainstWalls(map);
+
+        for (Enemy enemy: enemies) {
+            if (enemy.alive) {
+                enemy.solveCollisionAgainstWalls(map);
+            }
+        }
+
+        if (spaceShip.alive) {
+            spaceShip.solveCollisionAgainstWalls(map);
+        }
+
+        mark(Profiler.WALLS);
+
+        // register enemies to the grid so that only close ones are checked
+        Enemy.fillGrid(enemies, enemyGrid);
+
+        // solve collision between an enemy and another enemy
+        Enemy.solveCollisionBetweenEnemies(enemies, enemyGrid);
+
+        // drop the cells enemies were pushed out of
+        Enemy.fillGrid(enemies, enemyGrid);
+
+        // solve collision between Sota and an enemy
+        int count = enemyGrid.query(sota.position.x, sota.position.y, sota.width, sota.height);
+        for (int k = 0; k < count; k++) {
+            Enemy enemy = enemies.get(enemyGrid.get(k));
+            if (!enemy.alive) continue;
+
+            if (sota.position.x <= enemy.position.x + enemy.width && sota.position.x + sota.width >= enemy.position.x &&
+                sota.position.y <= enemy.position.y + enemy.height && sota.position.y + sota.height >= enemy.position.y) {
+                sota.attacked(elapsedTime, enemy.damage);
+            }
+        }
+
+        // collision detection against the space ship
+        if (spaceShip.alive) {
+            solveSotasCollisionAgainstShip(elapsedTime);
+        }
+
+        mark(Profiler.ENEMIES);
+
+        // solve collision between Sota and walls
+        sota.solveCollisionAgainstWalls(map);
+
+        mark(Profiler.WALLS);
+
+        // bullets
+        bulletLoop: for (int i = 0; i < sota.bullets.size(); i++) {
+            Bullet bullet = sota.bullets.get(i);
+
+            bullet.move(elapsedTime);
+            if (!bullet.alive) {
+                sota.bullets.remove(bullet);
+                i--;
+                continue;
+            }
+
+            int x = bullet.position.x;
+            int y = bullet.position.y;
+
+            // a bullet fired before Sota entered a smaller room can be out of it, which is where the walls of the map are
+            if (x / Constants.TILE_SIZE < 0 || x >= map.getWidth() || y / Constants.TILE_SIZE < 0 || y >= map.getHeight()) {
+                sota.bullets.remove(bullet);
+                i--;
+                continue;
+            }
+
+            // hit the wall
+            if (map.getTile(x / Constants.TILE_SIZE, y / Constants.TILE_SIZE) == Map.GROUND ||
+                (map.getTile(x / Constants.TILE_SIZE, y / Constants.TILE_SIZE) == Map.GROUND_HILL_LEFT && Constants.TILE_SIZE - x % Constants.TILE_SIZE < y % Constants.TILE_SIZE) ||
+                (map.getTile(x / Constants.TILE_SIZE, y / Constants.TILE_SIZE) == Map.GROUND_HILL_RIGHT && x % Constants.TILE_SIZE < y % Constants.TILE_SIZE)) {
+                sota.bullets.remove(bullet);
+                i--;
+                continue;
+            }
+
+            count = enemyGrid.query(x, y, 0, 0);
+            for (int k = 0; k < count; k++) {
+                Enemy enemy = enemies.get(enemyGrid.get(k));
+                if (!enemy.alive) continue;
+
+                if (enemy.position.x <= x && x <= enemy.position.x + enemy.width &&
+                    enemy.position.y <= y && y <= enemy.position.y + enemy.height) {
+                    enemy.attacked(elapsedTime, bullet.damage);
+                    if (!enemy.alive) {
+                        pickups.addGem(enemy.position.x, enemy.position.y);
+                    }
+                    sota.bullets.remove(bullet);
+                    i--;
+                    continue bulletLoop;
+                }
+            }
+            if (spaceShip.alive) {
+                if (spaceShip.position.x <= x && x <= spaceShip.position.x + spaceShip.width &&
+                    spaceShip.position.y <= y && y <= spaceShip.position.y + spaceShip.height) {
+                    spaceShip.attacked(elapsedTime, bullet.damage);
+                    if (!spaceShip.alive) {
+                        gameClear = true;
+                        running = false;
+                        emit(SOUND_GAME_CLEAR);
+                    }
+                    sota.bullets.remove(bullet);
+                    i--;
+                    continue;
+                }
+            }
+        }
+
+        // sword
+        if (sota.sword) {
+            if (sota.facingRight) {
+                sota.swordPosition.x = sota.position.x + sota.width;
+            } else {
+                sota.swordPosition.x = sota.position.x - sota.swordWidth;
+            }
+            sota.swordPosition.y = sota.position.y + sota.height / 2 - sota.swordHeight / 2;
+
+            count = enemyGrid.query(sota.swordPosition.x, sota.swordPosition.y, sota.swordWidth, sota.swordHeight);
+            for (int k = 0; k < count; k++) {
+                Enemy enemy = enemies.get(enemyGrid.get(k));
+                if (!enemy.alive) continue;
+
+                if (sota.swordPosition.y <= enemy.position.y + enemy.height && sota.swordPosition.y + sota.swordHeight >= enemy.position.y &&
+                    sota.swordPosition.x <= enemy.position.x + enemy.width && sota.swordPosition.x + sota.swordWidth >= enemy.position.x) {
+                    enemy.attacked(elapsedTime, sota.swordDamage);
+                    if (!enemy.alive) {
+                        pickups.addGem(enemy.position.x, enemy.position.y);
+                    }
+                }
+            }
+            if (spaceShip.alive) {
+                if (sota.swordPosition.y <= spaceShip.position.y + spaceShip.height && sota.swordPosition.y + sota.swordHeight >= spaceShip.position.y &&
+                    sota.swordPosition.x <= spaceShip.position.x + spaceShip.width && sota.swordPosition.x + sota.swordWidth >= spaceShip.position.x) {
+                    spaceShip.attacked(elapsedTime, sota.swordDamage);
+                    if (!spaceShip.alive) {
+                        gameClear = true;
+                        running = false;
+                        emit(SOUND_GAME_CLEAR);
+                    }
+                }
+            }
+        }
+
+        mark(Profiler.BULLETS);
+
+        // get coins
+        int collected = pickups.collectCoins(sota.position.x, sota.position.y, Constants.TILE_SIZE);
+        for (int i = 0; i < collected; i++) {
+            earnedCoins++;
+            emit(SOUND_COIN);
+            if (earnedCoins == Constants.COIN_MAX) {
+                earnedCoins = 0;
+                lives++;
+                if (lives == Constants.LIFE_MAX) {
+                    lives = Constants.LIFE_MAX - 1;
+                }
+                emit(SOUND_HEALTH);
+            }
+        }
+
+        // get gems
+        collected = pickups.collectGems(sota.position.x, sota.position.y, Constants.TILE_SIZE);
+        for (int i = 0; i < collected; i++) {
+            earnedGems++;
+            emit(SOUND_GEM);
+            if (earnedGems == Constants.GEM_MAX) {
+                earnedGems = 0;
+                lives++;
+                if (lives == Constants.LIFE_MAX) {
+                    lives = Constants.LIFE_MAX - 1;
+                }
+                emit(SOUND_HEALTH);
+            }
+        }
+
+        if (sota.fired) emit(SOUND_GUN);
+        if (sota.swung) emit(SOUND_SWORD);
+        if (sota.hurt) emit(SOUND_ATTACKED);
+
+        if (!sota.alive) {
+            gameOver = true;
+            lives--;
+            running = false;
+            emit(SOUND_GAME_OVER);
+        }
+
+        mark(Profiler.PICKUPS);
+    }
+
+    /**
+     * Copies what is drawn from the stage into a snapshot.
+     * @param snapshot the snapshot to fill
+     */
+    public void fillSnapshot(WorldSnapshot snapshot) {
+        snapshot.clear();
+
+        snapshot.stage = map.getStage();
+        snapshot.stageNum = map.getStageNum();
+        snapshot.mapWidth = map.getWidth();
+        snapshot.mapHeight = map.getHeight();
+
+        if (spaceShip.alive) {
+            snapshot.addSprite(WorldSnapshot.SPACE_SHIP, spaceShip, 0);
+        }
+
+        for (Enemy enemy: enemies) {
+            if (enemy.alive) {
+                snapshot.addSprite(WorldSnapshot.ENEMY, enemy, enemy.velocity.x < 0 ? 0 : WorldSnapshot.FACING_RIGHT);
+            }
+        }
+
+        // Sota is always the last sprite
+        int flags = 0;
+        if (sota.facingRight) flags |= WorldSnapshot.FACING_RIGHT;
+        if (sota.jumping) flags |= WorldSnapshot.JUMPING;
+        if (sota.sword) flags |= WorldSnapshot.SWORD;
+        if (!sota.bullets.isEmpty()) flags |= WorldSnapshot.GUN;
+        snapshot.addSprite(WorldSnapshot.SOTA, sota, flags);
+
+        for (Bullet bullet: sota.bullets) {
+            snapshot.addBullet(bullet);
+        }
+
+        pickups.fillSnapshot(snapshot);
+
+        snapshot.lives = lives;
+        snapshot.earnedCoins = earnedCoins;
+        snapshot.earnedGems = earnedGems;
+        snapshot.timeRemaining = timeRemaining;
+        snapshot.gameOver = gameOver;
+        snapshot.gameClear = gameClear;
+    }
+
+    /**
+     * Returns a checksum of the sprites, the bullets, the resources, and the counts of the game.
+     * Worlds moved the same way from the same stage have the same checksum.
+     * @return int the checksum
+     */
+    public int checksum() {
+        int hash = checksum(17, sota);
+        for (Enemy enemy: enemies) {
+            hash = checksum(hash, enemy);
+        }
+        hash = checksum(hash, spaceShip);
+
+        for (Bullet bullet: sota.bullets) {
+            hash = (hash * 31 + bullet.position.x) * 31 + bullet.position.y;
+        }
+
+        hash = (hash * 31 + pickups.getCoinCount()) * 31 + pickups.getGemCount();
+        hash = (((hash * 31 + lives) * 31 + earnedCoins) * 31 + earnedGems) * 31 + timeRemaining;
+        return hash * 2 + (gameOver ? 1 : 0);
+    }
+
+    private static int checksum(int hash, Sprite sprite) {
+        hash = (hash * 31 + sprite.position.x) * 31 + sprite.position.y;
+        hash = (hash * 31 + sprite.velocity.x) * 31 + sprite.velocity.y;
+        return (hash * 31 + sprite.hp) * 2 + (sprite.alive ? 1 : 0);
+    }
+
+    /**
+     * Returns whether the game is running.
+     * @return boolean true if the game has been started and is not over or cleared
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns whether the game is over.
+     * @return boolean true if Sota has died
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Returns whether the stage is cleared.
+     * @return boolean true if the space ship has been destroyed
+     */
+    public boolean isGameClear() {
+        return gameClear;
+    }
+
+    /**
+     * Returns the number of lives.
+     * @return int the number of lives
+     */
+    public int getLives() {
+        return lives;
+    }
+
+    /**
+     * Returns the number of coins earned.
+     * @return int the number of coins earned
+     */
+    public int getEarnedCoins() {
+        return earnedCoins;
+    }
+
+    /**
+     * Returns the number of gems earned.
+     * @return int the number of gems earned
+     */
+    public int getEarnedGems() {
+        return earnedGems;
+    }
+
+    /**
+     * Returns the map.
+     * @return Map the map
+     */
+    public Map getMap() {
+        return map;
+    }
+
+    /**
+     * Returns Sota.
+     * @return Sota Sota
+     */
+    public Sota getSota() {
+        return sota;
+    }
+
+    /**
+     * Returns the space ship.
+     * @return SpaceShip the space ship
+     */
+    public SpaceShip getSpaceShip() {
+        return spaceShip;
+    }
+
+    /**
+     * Returns the number of sounds the last tick asked to play.
+     * @return int the number of sounds
+     */
+    public int getSoundCount() {
+        return soundCount;
+    }
+
+    /**
+     * Returns a sound the last tick asked to play.
+     * @param i the index of the sound, from 0 to getSoundCount() - 1
+     * @return int the sound, one of the SOUND constants
+     */
+    public int getSound(int i) {
+        return sounds[i];
+    }
+
+    /**
+     * Sets the profiler which measures the phases of a tick.
+     * The caller begins and ends the frames of the profiler around step().
+     * @param profiler the profiler, or null not to measure
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Adds the time since the last mark to a phase if the tick is profiled.
+     */
+    private void mark(int phase) {
+        if (profiler != null) {
+            profiler.mark(phase);
+        }
+    }
+
+    /**
+     * Asks to play a sound after this tick.
+     */
+    private void emit(int sound) {
+        if (soundCount == sounds.length) {
+            sounds = Arrays.copyOf(sounds, soundCount * 2);
+        }
+        sounds[soundCount++] = sound;
+    }
+
+    /**
+     * Solves Sota's collision against the space ship.
+     */
+    private void solveSotasCollisionAgainstShip(double elapsedTime) {
+        if (!sota.alive) return;
+
+        sota.jumping = true;
+
+        // check the ground and the ceiling
+        if (spaceShip.position.x <= sota.position.x && sota.position.x + sota.width <= spaceShip.position.x + spaceShip.width) {
+            if (sota.position.y < spaceShip.position.y && spaceShip.position.y < sota.position.y + sota.height) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                sota.position.y = spaceShip.position.y - sota.height;
+                sota.jumping = false;
+            } else if (sota.position.y < spaceShip.position.y + spaceShip.height && spaceShip.position.y + spaceShip.height < sota.position.y + sota.height) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                sota.position.y = spaceShip.position.y + spaceShip.height;
+            }
+        }
+
+        // check the sides
+        if (spaceShip.position.y <= sota.position.y && sota.position.y + sota.height <= spaceShip.position.y + spaceShip.height) {
+            if (sota.position.x < spaceShip.position.x && spaceShip.position.x < sota.position.x + sota.width) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                sota.position.x = spaceShip.position.x - sota.width;
+            } else if (sota.position.x < spaceShip.position.x + spaceShip.width && spaceShip.position.x + spaceShip.width < sota.position.x + sota.width) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                sota.position.x = spaceShip.position.x + spaceShip.width;
+            }
+        }
+
+        // diagonal collision
+        if (sota.position.x < spaceShip.position.x && spaceShip.position.x < sota.position.x + sota.width) {
+            if (sota.position.y < spaceShip.position.y && spaceShip.position.y < sota.position.y + sota.height) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                if (sota.position.x + sota.width - spaceShip.position.x < sota.position.y + sota.height - spaceShip.position.y) {
+                    sota.position.x = spaceShip.position.x - sota.width;
+                    sota.jumping = false;
+                } else {
+                    sota.position.y = spaceShip.position.y - sota.height;
+                }
+            } else if (sota.position.y < spaceShip.position.y + spaceShip.height && spaceShip.position.y + spaceShip.height < sota.position.y + sota.height) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                if (sota.position.x + sota.width - spaceShip.position.x < spaceShip.position.y + spaceShip.height - sota.position.y) {
+                    sota.position.x = spaceShip.position.x - sota.width;
+                } else {
+                    sota.position.y = spaceShip.position.y + spaceShip.height;
+                }
+            }
+        }
+
+        if (sota.position.x < spaceShip.position.x + spaceShip.width && spaceShip.position.x + spaceShip.width < sota.position.x + sota.width) {
+            if (sota.position.y < spaceShip.position.y && spaceShip.position.y < sota.position.y + sota.height) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                if (sota.position.x + sota.width - spaceShip.position.x < sota.position.y + sota.height - spaceShip.position.y) {
+                    sota.position.x = spaceShip.position.x + spaceShip.width;
+                    sota.jumping = false;
+                } else {
+                    sota.position.y = spaceShip.position.y - sota.height;
+                }
+            } else if (sota.position.y < spaceShip.position.y + spaceShip.height && spaceShip.position.y + spaceShip.height < sota.position.y + sota.height) {
+                sota.attacked(elapsedTime, spaceShip.damage);
+                if (sota.position.x + sota.width - spaceShip.position.x < spaceShip.position.y + spaceShip.height - sota.position.y) {
+                    sota.position.x = spaceShip.position.x + spaceShip.width;
+                } else {
+                    sota.position.y = spaceShip.position.y + spaceShip.height;
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package sotasadventure;
 
-import java.awt.Color;
-import java.awt.Font;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.Image;
@@ -49,7 +48,7 @@ public class WorldMapState extends State {
 
     private JButton[] stageButtons = new JButton[stages.length];
 
-    private Image worldmap;
+    private ScaledBackground worldmap;
     private Image heartImage;
     private Image coinImage;
     private Image gemImage;
@@ -63,6 +62,11 @@ public class WorldMapState extends State {
     private ImageIcon helpImage;
     private ImageIcon helpImageHover;
 
+    private Hud hud = new Hud(450);
+    private int livesItem;
+    private int coinsItem;
+    private int gemsItem;
+
     /**
      * Sets the background picture.
      * @param gameMode the state machine of the game
@@ -145,30 +149,19 @@ public class WorldMapState extends State {
     @Override
     public void update(double elapsedTime) {}
 
-    @Override
-    public void render() {
-        repaint();
-    }
-
     @Override
     public void paintComponent(Graphics g) {
-        g.drawImage(Util.getScaledImage(worldmap, (int) getSize().getWidth(), (int) getSize().getHeight()), 0, 0, null);
+        // the world map changes only when it is entered, so it is painted only then and when Swing asks for it
+        worldmap.draw(g, getWidth(), getHeight());
 
-        g.setFont(new Font("Consolas", Font.PLAIN, 30));
-        g.setColor(Color.WHITE);
-
-        g.drawImage(heartImage, 10, 5, null);
-        g.drawString(" x " + lives, 50, 40);
-
-        g.drawImage(coinImage, 150, 5, null);
-        g.drawString(" x " + coins, 190, 40);
-
-        g.drawImage(gemImage, 290, 5, null);
-        g.drawString(" x " + gems, 330, 40);
+        hud.set(livesItem, lives);
+        hud.set(coinsItem, coins);
+        hud.set(gemsItem, gems);
+        hud.draw(g);
     }
 
     @Override
-    public void enter(String optional) {
+    public void load(String optional) {
         Preferences prefs = Preferences.userNodeForPackage(WorldMapState.class);
         lives = prefs.getInt("lives", 5);
         coins = prefs.getInt("coin", 0);
@@ -176,23 +169,33 @@ public class WorldMapState extends State {
 
         for (int i = 0; i < stages.length; i++) {
             stages[i].cleared = prefs.get(stages[i].name, "not cleared").equals("cleared");
+            stages[i].available = stages[i].cleared || i == 0 || stages[i - 1].cleared;
+        }
+    }
 
-            if (stages[i].cleared) {
-                stages[i].available = true;
-                stageButtons[i].setIcon(blue);
-                stageButtons[i].setRolloverIcon(blueHover);
-            } else {
-                if (i == 0 || stages[i - 1].cleared) {
-                    stages[i].available = true;
-                    stageButtons[i].setIcon(red);
-                    stageButtons[i].setRolloverIcon(redHover);
-                } else {
-                    stages[i].available = false;
-                    stageButtons[i].setIcon(black);
-                    stageButtons[i].setRolloverIcon(blackHover);
+    @Override
+    public void enter(String optional) {
+        AudioMixer.getShared().playMusic("/resources/music/worldmap.wav");
+
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < stages.length; i++) {
+                    if (stages[i].cleared) {
+                        stageButtons[i].setIcon(blue);
+                        stageButtons[i].setRolloverIcon(blueHover);
+                    } else if (stages[i].available) {
+                        stageButtons[i].setIcon(red);
+                        stageButtons[i].setRolloverIcon(redHover);
+                    } else {
+                        stageButtons[i].setIcon(black);
+                        stageButtons[i].setRolloverIcon(blackHover);
+                    }
                 }
+
+                repaint();
             }
-        }
+        });
     }
 
     @Override
@@ -202,43 +205,21 @@ public class WorldMapState extends State {
      * Loads images.
      */
     private void loadResources() {
-        ImageIcon ii;
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/world-map.png"));
-        worldmap = ii.getImage();
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/heart.png"));
-        heartImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/coin.png"));
-        coinImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/gem.png"));
-        gemImage = Util.getScaledImage(ii.getImage(), Constants.TILE_SIZE, Constants.TILE_SIZE);
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/button-blue.png"));
-        blue = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/button-blue-hover.png"));
-        blueHover = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/button-red.png"));
-        red = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/button-red-hover.png"));
-        redHover = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/button-black.png"));
-        black = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/buttons/button-black-hover.png"));
-        blackHover = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/help.png"));
-        helpImage = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
-
-        ii = new ImageIcon(getClass().getResource("/resources/images/help-hover.png"));
-        helpImageHover = new ImageIcon(Util.getScaledImage(ii.getImage(), 30, 30));
+        worldmap = new ScaledBackground(Assets.getImage("/resources/images/world-map.png"));
+        heartImage = Assets.getImage("/resources/images/heart.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        coinImage = Assets.getImage("/resources/images/coin.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        gemImage = Assets.getImage("/resources/images/gem.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        livesItem = hud.addItem(heartImage, 10, true);
+        coinsItem = hud.addItem(coinImage, 150, true);
+        gemsItem = hud.addItem(gemImage, 290, true);
+        blue = new ImageIcon(Assets.getImage("/resources/images/buttons/button-blue.png", 30, 30));
+        blueHover = new ImageIcon(Assets.getImage("/resources/images/buttons/button-blue-hover.png", 30, 30));
+        red = new ImageIcon(Assets.getImage("/resources/images/buttons/button-red.png", 30, 30));
+        redHover = new ImageIcon(Assets.getImage("/resources/images/buttons/button-red-hover.png", 30, 30));
+        black = new ImageIcon(Assets.getImage("/resources/images/buttons/button-black.png", 30, 30));
+        blackHover = new ImageIcon(Assets.getImage("/resources/images/buttons/button-black-hover.png", 30, 30));
+        helpImage = new ImageIcon(Assets.getImage("/resources/images/help.png", 30, 30));
+        helpImageHover = new ImageIcon(Assets.getImage("/resources/images/help-hover.png", 30, 30));
     }
 
 }
@@ -0,0 +1,176 @@
+package sotasadventure;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Image;
+
+/**
+ * The class that draws the sprites, the bullets, the coins, and the gems of a snapshot.
+ * Sprites do not know how they look; this class chooses their images from their kinds and flags.
+ *
+ * @author Sota Nishiyama
+ */
+public class WorldRenderer {
+    private static final Color INVINCIBLE_COLOR = new Color(255, 0, 0, 50);
+
+    private int swordWidth;
+    private int swordHeight;
+
+    private Image standRightImage;
+    private Image standLeftImage;
+    private Image jumpRightImage;
+    private Image jumpLeftImage;
+    private Image attackRightImage;
+    private Image attackLeftImage;
+    private Image bulletImage;
+    private Image swordRightImage;
+    private Image swordLeftImage;
+    private Image gunRightImage;
+    private Image gunLeftImage;
+
+    private Image enemyLeftImage;
+    private Image enemyRightImage;
+
+    private Image spaceShipImage;
+
+    private Image coinImage;
+    private Image gemImage;
+
+    /**
+     * Loads the images in the sizes of the given sprites.
+     * @param sota Sota
+     * @param enemyWidth the width of enemies
+     * @param enemyHeight the height of enemies
+     * @param spaceShip the space ship
+     */
+    public WorldRenderer(Sota sota, int enemyWidth, int enemyHeight, SpaceShip spaceShip) {
+        swordWidth = sota.swordWidth;
+        swordHeight = sota.swordHeight;
+
+        standRightImage = Assets.getImage("/resources/images/sota.png", sota.width, sota.height);
+        standLeftImage = Assets.getImage("/resources/images/sota.png", sota.width, sota.height, true);
+        jumpRightImage = Assets.getImage("/resources/images/sota-jump.png", sota.width, sota.height);
+        jumpLeftImage = Assets.getImage("/resources/images/sota-jump.png", sota.width, sota.height, true);
+        attackRightImage = Assets.getImage("/resources/images/sota-attack.png", sota.width, sota.height);
+        attackLeftImage = Assets.getImage("/resources/images/sota-attack.png", sota.width, sota.height, true);
+        bulletImage = Assets.getImage("/resources/images/bullet.png", sota.width, sota.height);
+        swordRightImage = Assets.getImage("/resources/images/sword.png", swordWidth, swordHeight);
+        swordLeftImage = Assets.getImage("/resources/images/sword.png", swordWidth, swordHeight, true);
+        gunRightImage = Assets.getImage("/resources/images/gun.png", sota.width, sota.height);
+        gunLeftImage = Assets.getImage("/resources/images/gun.png", sota.width, sota.height, true);
+
+        enemyLeftImage = Assets.getImage("/resources/images/enemy.png", enemyWidth, enemyHeight);
+        enemyRightImage = Assets.getImage("/resources/images/enemy.png", enemyWidth, enemyHeight, true);
+
+        spaceShipImage = Assets.getImage("/resources/images/spaceship.png", spaceShip.width, (int) (spaceShip.height * 1.33));
+
+        coinImage = Assets.getImage("/resources/images/coin.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+        gemImage = Assets.getImage("/resources/images/gem.png", Constants.TILE_SIZE, Constants.TILE_SIZE);
+    }
+
+    /**
+     * Draws the sprites, the bullets, and the resources at their interpolated positions.
+     * @param g the graphics
+     * @param snapshot the snapshot to draw
+     * @param mapX the x coordinate of the map
+     * @param mapY the y coordinate of the map
+     * @param width the width of the area to draw
+     * @param height the height of the area to draw
+     * @param alpha how far the game is between the last tick and the next one, from 0 to 1
+     */
+    public void draw(Graphics g, WorldSnapshot snapshot, int mapX, int mapY, int width, int height, double alpha) {
+        for (int i = 0; i < snapshot.spriteCount; i++) {
+            drawSprite(g, snapshot, i, snapshot.interpolateX(i, alpha) + mapX, snapshot.interpolateY(i, alpha) + mapY);
+        }
+
+        for (int i = 0; i < snapshot.bulletCount; i++) {
+            int x = WorldSnapshot.interpolate(snapshot.bulletLastXs[i], snapshot.bulletXs[i], alpha);
+            int y = WorldSnapshot.interpolate(snapshot.bulletLastYs[i], snapshot.bulletYs[i], alpha);
+            g.drawImage(bulletImage, x - Constants.TILE_SIZE / 2 + mapX, y - Constants.TILE_SIZE / 2 + mapY, null);
+        }
+
+        // only the tiles on the screen are looked at for coins
+        int firstX = Math.max(-mapX / Constants.TILE_SIZE, 0);
+        int firstY = Math.max(-mapY / Constants.TILE_SIZE, 0);
+        int lastX = Math.min((width - mapX) / Constants.TILE_SIZE, snapshot.coinColumns - 1);
+        int lastY = Math.min((height - mapY) / Constants.TILE_SIZE, snapshot.coinRows - 1);
+        for (int i = firstY; i <= lastY; i++) {
+            for (int j = firstX; j <= lastX; j++) {
+                if (snapshot.hasCoin(j, i)) {
+                    g.drawImage(coinImage, j * Constants.TILE_SIZE + mapX, i * Constants.TILE_SIZE + mapY, null);
+                }
+            }
+        }
+
+        for (int i = 0; i < snapshot.gemCount; i++) {
+            int x = snapshot.gemXs[i] + mapX;
+            int y = snapshot.gemYs[i] + mapY;
+            if (x > -Constants.TILE_SIZE && x < width && y > -Constants.TILE_SIZE && y < height) {
+                g.drawImage(gemImage, x, y, null);
+            }
+        }
+    }
+
+    /**
+     * Draws a sprite, its health bar, and Sota's weapons.
+     */
+    private void drawSprite(Graphics g, WorldSnapshot snapshot, int i, int x, int y) {
+        int flags = snapshot.flags[i];
+        boolean facingRight = (flags & WorldSnapshot.FACING_RIGHT) != 0;
+        int width = snapshot.widths[i];
+        int height = snapshot.heights[i];
+
+        Image image;
+        Color healthColor;
+        switch (snapshot.kinds[i]) {
+            case WorldSnapshot.SOTA:
+            if ((flags & (WorldSnapshot.SWORD | WorldSnapshot.GUN)) != 0) {
+                image = facingRight ? attackRightImage : attackLeftImage;
+            } else if ((flags & WorldSnapshot.JUMPING) != 0) {
+                image = facingRight ? jumpRightImage : jumpLeftImage;
+            } else {
+                image = facingRight ? standRightImage : standLeftImage;
+            }
+            healthColor = Color.BLUE;
+            break;
+
+            case WorldSnapshot.ENEMY:
+            image = facingRight ? enemyRightImage : enemyLeftImage;
+            healthColor = Color.RED;
+            break;
+
+            default:
+            image = spaceShipImage;
+            healthColor = Color.RED;
+        }
+
+        g.drawImage(image, x, y, null);
+
+        if ((flags & WorldSnapshot.INVINCIBLE) != 0) {
+            g.setColor(INVINCIBLE_COLOR);
+            g.fillRect(x, y, width, height);
+        }
+
+        // draw the sprite's health bar
+        g.setColor(Color.BLACK);
+        g.fillRect(x, y - 10, width, 5);
+        g.setColor(healthColor);
+        g.fillRect(x, y - 10, width * snapshot.hps[i] / snapshot.maxHPs[i], 5);
+
+        // draw Sota's weapons
+        if ((flags & WorldSnapshot.GUN) != 0) {
+            if (facingRight) {
+                g.drawImage(gunRightImage, x + width, y, null);
+            } else {
+                g.drawImage(gunLeftImage, x - width, y, null);
+            }
+        }
+        if ((flags & WorldSnapshot.SWORD) != 0) {
+            if (facingRight) {
+                g.drawImage(swordRightImage, x + width, y + height / 2 - swordHeight / 2, null);
+            } else {
+                g.drawImage(swordLeftImage, x - swordWidth, y + height / 2 - swordHeight / 2, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package sotasadventure;
+
+import java.util.Arrays;
+
+/**
+ * The class that holds everything needed to draw a tick of a stage.
+ * The game loop fills a snapshot at the end of a tick and the renderer reads it afterwards,
+ * so the renderer never sees the sprites while they are being moved.
+ * Snapshots are reused, and their arrays only grow, so filling one allocates nothing once the arrays are big enough.
+ *
+ * @author Sota Nishiyama
+ */
+public class WorldSnapshot {
+    // kinds of sprites
+    public static final int SOTA = 0;
+    public static final int ENEMY = 1;
+    public static final int SPACE_SHIP = 2;
+
+    // flags of sprites
+    public static final int FACING_RIGHT = 1;
+    public static final int JUMPING = 2;
+    public static final int SWORD = 4;
+    public static final int GUN = 8;
+    public static final int INVINCIBLE = 16;
+
+    public Stage stage;
+    public int stageNum;
+    public int mapWidth;
+    public int mapHeight;
+
+    // sprites in the order they are drawn
+    public int spriteCount;
+    public int[] kinds = new int[16];
+    public int[] xs = new int[16];
+    public int[] ys = new int[16];
+    public int[] lastXs = new int[16];
+    public int[] lastYs = new int[16];
+    public int[] widths = new int[16];
+    public int[] heights = new int[16];
+    public int[] hps = new int[16];
+    public int[] maxHPs = new int[16];
+    public int[] flags = new int[16];
+
+    public int bulletCount;
+    public int[] bulletXs = new int[4];
+    public int[] bulletYs = new int[4];
+    public int[] bulletLastXs = new int[4];
+    public int[] bulletLastYs = new int[4];
+
+    // a bit for each tile of the map which has a coin
+    public long[] coins = new long[0];
+    public int coinColumns;
+    public int coinRows;
+    public long coinVersion;
+
+    public int gemCount;
+    public int[] gemXs = new int[16];
+    public int[] gemYs = new int[16];
+
+    public int lives;
+    public int earnedCoins;
+    public int earnedGems;
+    public int timeRemaining;
+
+    public boolean gameOver;
+    public boolean gameClear;
+
+    /**
+     * Empties the snapshot to be filled again.
+     */
+    public void clear() {
+        spriteCount = bulletCount = gemCount = 0;
+    }
+
+    /**
+     * Adds a sprite on top of the sprites added before.
+     * @param kind the kind of the sprite
+     * @param sprite the sprite
+     * @param flags the flags of the sprite, such as FACING_RIGHT
+     */
+    public void addSprite(int kind, Sprite sprite, int flags) {
+        if (spriteCount == kinds.length) {
+            int length = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, length);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+            lastXs = Arrays.copyOf(lastXs, length);
+            lastYs = Arrays.copyOf(lastYs, length);
+            widths = Arrays.copyOf(widths, length);
+            heights = Arrays.copyOf(heights, length);
+            hps = Arrays.copyOf(hps, length);
+            maxHPs = Arrays.copyOf(maxHPs, length);
+            this.flags = Arrays.copyOf(this.flags, length);
+        }
+
+        int i = spriteCount++;
+        kinds[i] = kind;
+        xs[i] = sprite.position.x;
+        ys[i] = sprite.position.y;
+        lastXs[i] = sprite.lastPosition.x;
+        lastYs[i] = sprite.lastPosition.y;
+        widths[i] = sprite.width;
+        heights[i] = sprite.height;
+        hps[i] = sprite.hp;
+        maxHPs[i] = sprite.maxHP;
+        this.flags[i] = flags | (sprite.invincible ? INVINCIBLE : 0);
+    }
+
+    /**
+     * Adds a bullet.
+     * @param bullet the bullet
+     */
+    public void addBullet(Bullet bullet) {
+        if (bulletCount == bulletXs.length) {
+            int length = bulletXs.length * 2;
+            bulletXs = Arrays.copyOf(bulletXs, length);
+            bulletYs = Arrays.copyOf(bulletYs, length);
+            bulletLastXs = Arrays.copyOf(bulletLastXs, length);
+            bulletLastYs = Arrays.copyOf(bulletLastYs, length);
+        }
+
+        int i = bulletCount++;
+        bulletXs[i] = bullet.position.x;
+        bulletYs[i] = bullet.position.y;
+        bulletLastXs[i] = bullet.lastPosition.x;
+        bulletLastYs[i] = bullet.lastPosition.y;
+    }
+
+    /**
+     * Copies the coins of the map unless the snapshot already has them.
+     * @param coins a bit for each tile of the map, row by row, which is set if the tile has a coin
+     * @param columns the width of the map in tiles
+     * @param rows the height of the map in tiles
+     * @param version the version of the coins, which changes whenever they change
+     */
+    public void setCoins(long[] coins, int columns, int rows, long version) {
+        if (version == coinVersion) return;
+        coinVersion = version;
+
+        int words = (columns * rows + 63) / 64;
+        if (this.coins.length < words) {
+            this.coins = new long[words];
+        }
+        System.arraycopy(coins, 0, this.coins, 0, words);
+        coinColumns = columns;
+        coinRows = rows;
+    }
+
+    /**
+     * Returns whether a tile has a coin.
+     * @param tileX the x coordinate of the tile
+     * @param tileY the y coordinate of the tile
+     * @return boolean true if the tile has a coin
+     */
+    public boolean hasCoin(int tileX, int tileY) {
+        int tile = tileY * coinColumns + tileX;
+        return (coins[tile >> 6] & 1L << tile) != 0;
+    }
+
+    /**
+     * Adds a gem.
+     * @param x the x coordinate of the gem
+     * @param y the y coordinate of the gem
+     */
+    public void addGem(int x, int y) {
+        if (gemCount == gemXs.length) {
+            gemXs = Arrays.copyOf(gemXs, gemXs.length * 2);
+            gemYs = Arrays.copyOf(gemYs, gemYs.length * 2);
+        }
+        gemXs[gemCount] = x;
+        gemYs[gemCount] = y;
+        gemCount++;
+    }
+
+    /**
+     * Returns the x coordinate of a sprite between the last tick and the current one.
+     * @param i the index of the sprite
+     * @param alpha how far the game is between the last tick and the next one, from 0 to 1
+     * @return int the interpolated x coordinate
+     */
+    public int interpolateX(int i, double alpha) {
+        return interpolate(lastXs[i], xs[i], alpha);
+    }
+
+    /**
+     * Returns the y coordinate of a sprite between the last tick and the current one.
+     * @param i the index of the sprite
+     * @param alpha how far the game is between the last tick and the next one, from 0 to 1
+     * @return int the interpolated y coordinate
+     */
+    public int interpolateY(int i, double alpha) {
+        return interpolate(lastYs[i], ys[i], alpha);
+    }
+
+    /**
+     * Returns a coordinate between the last tick and the current one.
+     * @param last the coordinate at the last tick
+     * @param current the coordinate at the current tick
+     * @param alpha how far the game is between the last tick and the next one, from 0 to 1
+     * @return int the interpolated coordinate
+     */
+    public static int interpolate(int last, int current, double alpha) {
+        return last + (int) Math.round((current - last) * alpha);
+    }
+}
@@ -0,0 +1,103 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that solving collision between enemies through the grid gives the same result as checking every pair.
+ *
+ * @author Sota Nishiyama
+ */
+public class EnemyCollisionTest {
+    private static final int CASES = 20000;
+
+    @Test
+    public void randomClusters() {
+        Random random = new Random(1);
+        for (int c = 0; c < CASES; c++) {
+            check(random, 2 + random.nextInt(30), 6 * Constants.TILE_SIZE, 3 * Constants.TILE_SIZE);
+        }
+    }
+
+    @Test
+    public void sameRowClusters() {
+        Random random = new Random(2);
+        for (int c = 0; c < CASES; c++) {
+            check(random, 2 + random.nextInt(30), 8 * Constants.TILE_SIZE, 0);
+        }
+    }
+
+    @Test
+    public void crowdedClusters() {
+        Random random = new Random(3);
+        for (int c = 0; c < CASES; c++) {
+            check(random, 2 + random.nextInt(60), 2 * Constants.TILE_SIZE, Constants.TILE_SIZE);
+        }
+    }
+
+    /**
+     * Places enemies randomly in an area and compares both ways of solving their collision.
+     */
+    private static void check(Random random, int n, int width, int height) {
+        long seed = random.nextLong();
+        ArrayList<Enemy> expected = createEnemies(new Random(seed), n, width, height);
+        ArrayList<Enemy> actual = createEnemies(new Random(seed), n, width, height);
+
+        solveNaively(expected);
+
+        SpatialHash grid = new SpatialHash(Constants.TILE_SIZE, 16);
+        Enemy.fillGrid(actual, grid);
+        Enemy.solveCollisionBetweenEnemies(actual, grid);
+
+        for (int i = 0; i < n; i++) {
+            String message = "enemy " + i + " of " + n + " with seed " + seed;
+            assertEquals(message, expected.get(i).position.x, actual.get(i).position.x);
+            assertEquals(message, expected.get(i).position.y, actual.get(i).position.y);
+            assertEquals(message, expected.get(i).velocity.x, actual.get(i).velocity.x);
+        }
+    }
+
+    private static ArrayList<Enemy> createEnemies(Random random, int n, int width, int height) {
+        ArrayList<Enemy> enemies = new ArrayList<Enemy>();
+        for (int i = 0; i < n; i++) {
+            Enemy enemy = new Enemy(Constants.TILE_SIZE, Constants.TILE_SIZE);
+            enemy.init(random.nextInt(width + 1), random.nextInt(height + 1), 10);
+            if (random.nextBoolean()) {
+                enemy.velocity.x *= -1;
+            }
+            enemy.alive = random.nextInt(8) != 0;
+            enemies.add(enemy);
+        }
+        return enemies;
+    }
+
+    /**
+     * Checks every pair of enemies, which is what the stage did before the grid.
+     */
+    private static void solveNaively(ArrayList<Enemy> enemies) {
+        for (int i = 0; i < enemies.size() - 1; i++) {
+            Enemy enemy1 = enemies.get(i);
+            if (!enemy1.alive) continue;
+
+            for (int j = i + 1; j < enemies.size(); j++) {
+                Enemy enemy2 = enemies.get(j);
+                if (!enemy2.alive) continue;
+
+                if (enemy1.position.y <= enemy2.position.y + enemy2.height && enemy1.position.y + enemy1.height >= enemy2.position.y &&
+                    enemy1.position.x <= enemy2.position.x + enemy2.width && enemy1.position.x + enemy1.width >= enemy2.position.x) {
+                    enemy1.velocity.x *= -1;
+                    enemy2.velocity.x *= -1;
+                    if (enemy1.position.x < enemy2.position.x) {
+                        enemy1.position.x = enemy2.position.x - enemy1.width;
+                    } else {
+                        enemy2.position.x = enemy1.position.x - enemy2.width;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that the events of the buttons go through the ring buffer in order however many times it wraps around,
+ * and that the events which do not fit are dropped.
+ *
+ * @author Sota Nishiyama
+ */
+public class InputTest {
+    @Test
+    public void wrapAround() {
+        Input input = new Input();
+        long time = 0;
+
+        // a few events a tick, so that the events go around the buffer many times and cross its end
+        for (int tick = 0; tick < Input.CAPACITY * 4; tick++) {
+            assertTrue(input.press(Input.RIGHT, ++time));
+            assertTrue(input.press(Input.FIRE, ++time));
+            assertTrue(input.release(Input.FIRE, ++time));
+            assertEquals(Input.RIGHT | Input.FIRE, input.poll(time));
+
+            assertTrue(input.release(Input.RIGHT, ++time));
+            assertEquals(0, input.poll(time));
+        }
+    }
+
+    @Test
+    public void laterEvents() {
+        Input input = new Input();
+
+        // the events after the start of the tick wait for the next one
+        input.press(Input.LEFT, 10);
+        input.press(Input.UP, 20);
+        input.release(Input.LEFT, 30);
+        assertEquals(Input.LEFT, input.poll(15));
+        assertEquals(Input.LEFT | Input.UP, input.poll(25));
+        assertEquals(Input.UP, input.poll(35));
+    }
+
+    @Test
+    public void overflow() {
+        Input input = new Input();
+
+        // the buffer keeps the oldest events, and the ones which do not fit are dropped until it is polled
+        for (int i = 0; i < Input.CAPACITY / 2; i++) {
+            assertTrue(input.press(Input.ATTACK, i * 2));
+            assertTrue(input.release(Input.ATTACK, i * 2 + 1));
+        }
+        assertFalse(input.press(Input.LEFT, Input.CAPACITY));
+        assertFalse(input.release(Input.LEFT, Input.CAPACITY + 1));
+        assertEquals(Input.ATTACK, input.poll(Input.CAPACITY));
+
+        assertTrue(input.press(Input.RIGHT, Input.CAPACITY + 2));
+        assertEquals(Input.RIGHT, input.poll(Input.CAPACITY + 2));
+    }
+
+    @Test
+    public void overflowAfterPartialPoll() {
+        Input input = new Input();
+
+        // the events read by a poll make room for as many new ones
+        for (int i = 0; i < Input.CAPACITY; i++) {
+            assertTrue(input.press(Input.UP, i));
+        }
+        assertFalse(input.press(Input.UP, Input.CAPACITY));
+        assertEquals(Input.UP, input.poll(9));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(input.release(Input.UP, Input.CAPACITY + i));
+        }
+        assertFalse(input.release(Input.UP, Input.CAPACITY * 2));
+
+        // the presses left count for the tick even though UP is released in it
+        assertEquals(Input.UP, input.poll(Input.CAPACITY * 2));
+        assertEquals(0, input.poll(Input.CAPACITY * 2));
+    }
+
+    @Test
+    public void clear() {
+        Input input = new Input();
+
+        // the buttons held and the events recorded before a clear are forgotten, and the later ones are kept
+        input.press(Input.RIGHT, 1);
+        assertEquals(Input.RIGHT, input.poll(1));
+        input.press(Input.LEFT, 2);
+        input.clear();
+        input.press(Input.UP, 3);
+        assertEquals(Input.UP, input.poll(3));
+    }
+}
@@ -0,0 +1,128 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the edges of the cells of gems and of the words of coins, and that the slots of collected gems are
+ * given to new ones.
+ *
+ * @author Sota Nishiyama
+ */
+public class PickupsTest {
+    private static final int TILE = Constants.TILE_SIZE;
+    private static final int CELL = Pickups.GEM_CELL_SIZE * Constants.TILE_SIZE;
+
+    @Test
+    public void gemOnCellEdge() {
+        Pickups pickups = new Pickups();
+        pickups.reset(Pickups.GEM_CELL_SIZE * 3, Pickups.GEM_CELL_SIZE * 3);
+
+        // the center of the gem is on the left edge of the second cell, and the box reaches it from the first
+        pickups.addGem(CELL - TILE / 2, CELL - TILE / 2);
+        assertEquals(0, pickups.collectGems(CELL - TILE - 1, CELL - TILE - 1, TILE));
+        assertEquals(1, pickups.collectGems(CELL - TILE, CELL - TILE, TILE));
+        assertEquals(0, pickups.getGemCount());
+
+        // the center of the gem is on the last pixel of the first cell, and the box reaches it from the second
+        pickups.addGem(CELL - 1 - TILE / 2, CELL - 1 - TILE / 2);
+        assertEquals(0, pickups.collectGems(CELL, CELL, TILE));
+        assertEquals(1, pickups.collectGems(CELL - 1, CELL - 1, TILE));
+        assertEquals(0, pickups.getGemCount());
+    }
+
+    @Test
+    public void gemOutOfMap() {
+        Pickups pickups = new Pickups();
+        pickups.reset(Pickups.GEM_CELL_SIZE * 2, Pickups.GEM_CELL_SIZE * 2);
+
+        // an enemy which dies half out of the map drops its gem there, which belongs to the nearest cell
+        pickups.addGem(-TILE / 2, -TILE / 2);
+        assertEquals(0, pickups.collectGems(1, 1, TILE));
+        assertEquals(1, pickups.collectGems(-TILE, -TILE, TILE));
+        assertEquals(0, pickups.getGemCount());
+    }
+
+    @Test
+    public void freedSlotsAreReused() {
+        Pickups pickups = new Pickups();
+        pickups.reset(Pickups.GEM_CELL_SIZE * 4, Pickups.GEM_CELL_SIZE);
+
+        // more gems than the first slots, in the first two cells
+        for (int i = 0; i < 30; i++) {
+            pickups.addGem(i * TILE / 2, 0);
+        }
+        assertEquals(30, pickups.getGemCount());
+
+        // collect the gems of the first cell, which are in the first slots
+        int collected = pickups.collectGems(0, 0, CELL - 1);
+        assertEquals(15, collected);
+        assertEquals(15, pickups.getGemCount());
+
+        // the new gems take the freed slots before any new one, and the old gems are still there
+        for (int i = 0; i < 20; i++) {
+            pickups.addGem(CELL * 3 + i, TILE);
+        }
+        assertEquals(35, pickups.getGemCount());
+
+        WorldSnapshot snapshot = new WorldSnapshot();
+        pickups.fillSnapshot(snapshot);
+        assertEquals(35, snapshot.gemCount);
+        for (int i = 0; i < 35; i++) {
+            boolean reused = i < 15 || i >= 30;
+            assertEquals(reused, snapshot.gemXs[i] >= CELL * 3);
+        }
+        for (int i = 15; i < 30; i++) {
+            assertEquals(i * TILE / 2, snapshot.gemXs[i]);
+        }
+
+        // the collected gems are gone from their cell
+        assertEquals(0, pickups.collectGems(0, 0, CELL - 1));
+        assertEquals(20, pickups.collectGems(CELL * 3, 0, CELL));
+        assertEquals(15, pickups.getGemCount());
+    }
+
+    @Test
+    public void coinInLastBitOfWord() {
+        // the 64th tile is the last bit of the first word, and the 65th tile is the first bit of the next
+        Pickups pickups = new Pickups();
+        pickups.reset(10, 10);
+        pickups.addCoin(3, 6);
+        assertEquals(1, pickups.getCoinCount());
+
+        WorldSnapshot snapshot = new WorldSnapshot();
+        pickups.fillSnapshot(snapshot);
+        assertEquals(1L << 63, snapshot.coins[0]);
+        assertEquals(0, snapshot.coins[1]);
+        assertTrue(snapshot.hasCoin(3, 6));
+        assertFalse(snapshot.hasCoin(4, 6));
+
+        assertEquals(0, pickups.collectCoins(4 * TILE, 6 * TILE, TILE));
+        assertEquals(1, pickups.collectCoins(3 * TILE, 6 * TILE, TILE));
+        assertEquals(0, pickups.getCoinCount());
+
+        pickups.fillSnapshot(snapshot);
+        assertFalse(snapshot.hasCoin(3, 6));
+    }
+
+    @Test
+    public void coinInLastTile() {
+        // the last tile of a map whose tiles fill the words exactly is the last bit of the last word
+        Pickups pickups = new Pickups();
+        pickups.reset(16, 8);
+        pickups.addCoin(15, 7);
+        pickups.addCoin(15, 7);
+        assertEquals(1, pickups.getCoinCount());
+
+        WorldSnapshot snapshot = new WorldSnapshot();
+        pickups.fillSnapshot(snapshot);
+        assertEquals(0, snapshot.coins[0]);
+        assertEquals(1L << 63, snapshot.coins[1]);
+
+        assertEquals(1, pickups.collectCoins(15 * TILE, 7 * TILE, TILE));
+        assertEquals(0, pickups.getCoinCount());
+    }
+}
@@ -0,0 +1,113 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a replay recorded from a world, written and read back, verifies in a new world,
+ * and that it does not once one of its inputs is changed.
+ *
+ * @author Sota Nishiyama
+ */
+public class ReplayTest {
+    private static final String STAGE = "europe";
+    private static final int TICKS = 300;
+    private static final long TICK_LENGTH = 1000000000L / Constants.TICK_RATE;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("sotasadventure", ".replay");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Replay recorded = record(new Random(1));
+        recorded.write(file);
+
+        Replay replay = Replay.read(file);
+        assertEquals(STAGE, replay.getStage());
+        assertEquals(TICKS, replay.getTickCount());
+        assertEquals(-1, replay.verify(new World()));
+    }
+
+    @Test
+    public void changedInput() throws IOException {
+        // Sota walks right on the ground at first, so walking left for a tick there puts him somewhere else
+        // until he runs into a wall
+        int[] buttons = new int[TICKS];
+        for (int i = 0; i < TICKS; i++) {
+            buttons[i] = Input.RIGHT;
+        }
+        record(buttons).write(file);
+
+        int changed = 5;
+        setButtons(file, changed, Input.LEFT);
+
+        // the first checksum after the change differs
+        int expected = (changed / Replay.CHECKSUM_INTERVAL + 1) * Replay.CHECKSUM_INTERVAL - 1;
+        assertEquals(expected, Replay.read(file).verify(new World()));
+    }
+
+    /**
+     * Plays the stage with random buttons, as a player would, and records it.
+     */
+    private static Replay record(Random random) {
+        int[] buttons = new int[TICKS];
+        int held = 0;
+        for (int i = 0; i < TICKS; i++) {
+            // keep the buttons for a while, since a player does not press them every tick
+            if (random.nextInt(5) == 0) {
+                held = random.nextInt(64) & ~Input.UP;
+            }
+            buttons[i] = held;
+        }
+        return record(buttons);
+    }
+
+    /**
+     * Plays the stage with the given buttons the way StageState does, and records it.
+     */
+    private static Replay record(int[] buttons) {
+        World world = new World();
+        world.load(STAGE, 5, 0, 0);
+        world.start();
+
+        Replay replay = new Replay(STAGE, 5, 0, 0, TICK_LENGTH, Replay.CHECKSUM_INTERVAL);
+        for (int i = 0; i < buttons.length; i++) {
+            double elapsedTime = (double) (i + 1) * TICK_LENGTH / 1e9;
+            world.step(elapsedTime, buttons[i]);
+            replay.record(elapsedTime, buttons[i], world);
+        }
+        return replay;
+    }
+
+    /**
+     * Changes the buttons of a tick in a replay file.
+     * The buttons of the ticks are followed by the checksums and the final checksum at the end of the file.
+     */
+    private static void setButtons(File file, int tick, int buttons) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long checksums = (TICKS / Replay.CHECKSUM_INTERVAL + 1) * 4L;
+            raf.seek(raf.length() - checksums - TICKS + tick);
+            raf.writeByte(buttons);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Checks that the renderer always reads a whole snapshot, the newest one, while the game loop publishes
+ * snapshots as fast as it can on another thread.
+ *
+ * @author Sota Nishiyama
+ */
+public class SnapshotBufferTest {
+    private static final int TICKS = 200000;
+    private static final int SPRITES = 64;
+
+    private static final Stage STAGE = new Stage("test", new TileLayer[0], 0, 0, 0, 0);
+
+    @Test
+    public void nothingPublished() {
+        SnapshotBuffer buffer = new SnapshotBuffer();
+        assertNull(buffer.getFront());
+
+        fill(buffer.getBack(), 1);
+        assertNull(buffer.getFront());
+        buffer.publish();
+        assertEquals(1, buffer.getFront().timeRemaining);
+    }
+
+    @Test
+    public void newestSnapshot() {
+        SnapshotBuffer buffer = new SnapshotBuffer();
+
+        // the snapshots published between two reads are skipped, and the read one stays until the next
+        for (int tick = 1; tick <= 3; tick++) {
+            fill(buffer.getBack(), tick);
+            buffer.publish();
+        }
+        WorldSnapshot front = buffer.getFront();
+        assertEquals(3, front.timeRemaining);
+        assertSame(front, buffer.getFront());
+
+        fill(buffer.getBack(), 4);
+        assertEquals(3, front.timeRemaining);
+        buffer.publish();
+        assertEquals(4, buffer.getFront().timeRemaining);
+    }
+
+    @Test(timeout = 60000)
+    public void twoThreads() throws InterruptedException {
+        final SnapshotBuffer buffer = new SnapshotBuffer();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread gameLoop = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int tick = 1; tick <= TICKS; tick++) {
+                    fill(buffer.getBack(), tick);
+                    buffer.publish();
+                }
+            }
+        });
+        gameLoop.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                failure.set(e);
+            }
+        });
+        gameLoop.start();
+
+        // every snapshot read is one tick as a whole, and never older than the one read before
+        int last = 0;
+        int reads = 0;
+        while (last < TICKS) {
+            WorldSnapshot snapshot = buffer.getFront();
+            if (snapshot == null) continue;
+
+            int tick = snapshot.timeRemaining;
+            assertTrue("tick " + tick + " is read after tick " + last, tick >= last);
+            assertEquals(SPRITES, snapshot.spriteCount);
+            for (int i = 0; i < SPRITES; i++) {
+                assertEquals("sprite " + i + " of tick " + tick, tick, snapshot.xs[i]);
+                assertEquals("sprite " + i + " of tick " + tick, tick + i, snapshot.ys[i]);
+            }
+            assertEquals(tick, snapshot.lives);
+            last = tick;
+            reads++;
+
+            if (failure.get() != null) break;
+        }
+        gameLoop.join();
+        assertNull(failure.get());
+        assertTrue(reads > 1);
+    }
+
+    /**
+     * Fills a snapshot with the values of a tick, the tick itself first and last.
+     */
+    private static void fill(WorldSnapshot snapshot, int tick) {
+        snapshot.clear();
+        snapshot.stage = STAGE;
+        snapshot.timeRemaining = tick;
+
+        Sprite sprite = new Enemy(Constants.TILE_SIZE, Constants.TILE_SIZE);
+        for (int i = 0; i < SPRITES; i++) {
+            sprite.position.x = tick;
+            sprite.position.y = tick + i;
+            snapshot.addSprite(WorldSnapshot.ENEMY, sprite, 0);
+        }
+        snapshot.lives = tick;
+    }
+}
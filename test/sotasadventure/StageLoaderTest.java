@@ -0,0 +1,97 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+/**
+ * Checks that every shipped stage is the same whether it is read from the properties file, from the binary file
+ * at once, or from the binary file a chunk at a time.
+ *
+ * @author Sota Nishiyama
+ */
+public class StageLoaderTest {
+    @Test
+    public void binaryDense() throws IOException {
+        HashMap<String, Stage> expected = StageLoader.load("/resources/stages.properties");
+        HashMap<String, Stage> actual = BinaryStageLoader.load("/resources/stages.bin");
+        assertEquals(expected.keySet(), actual.keySet());
+
+        for (String name : expected.keySet()) {
+            for (TileLayer layer : actual.get(name).map) {
+                assertTrue(layer instanceof DenseTileLayer);
+            }
+            assertStage(expected.get(name), actual.get(name));
+        }
+    }
+
+    @Test
+    public void binaryStreamed() throws IOException {
+        HashMap<String, Stage> expected = StageLoader.load("/resources/stages.properties");
+
+        // stream every map, however small it is
+        int streamedMapTiles = Constants.STREAMED_MAP_TILES;
+        HashMap<String, Stage> actual;
+        Constants.STREAMED_MAP_TILES = 0;
+        try {
+            actual = BinaryStageLoader.load("/resources/stages.bin");
+        } finally {
+            Constants.STREAMED_MAP_TILES = streamedMapTiles;
+        }
+        assertEquals(expected.keySet(), actual.keySet());
+
+        for (String name : expected.keySet()) {
+            for (TileLayer layer : actual.get(name).map) {
+                assertTrue(layer instanceof ChunkedTileLayer);
+            }
+            assertStage(expected.get(name), actual.get(name));
+        }
+    }
+
+    /**
+     * Checks that two stages have the same settings, tiles, looks and spawns.
+     */
+    private static void assertStage(Stage expected, Stage actual) {
+        String name = expected.name;
+        assertEquals(name, actual.name);
+        assertEquals(name, expected.timeLimit, actual.timeLimit);
+        assertEquals(name, expected.spaceShipSpeed, actual.spaceShipSpeed);
+        assertEquals(name, expected.enemySpeed, actual.enemySpeed);
+        assertEquals(name, expected.friction, actual.friction, 0);
+
+        assertEquals(name, expected.map.length, actual.map.length);
+        for (int k = 0; k < expected.map.length; k++) {
+            assertLayer(name + " map " + k, expected.map[k], actual.map[k]);
+            assertLayer(name + " visuals " + k, expected.visuals[k], actual.visuals[k]);
+        }
+
+        assertArrayEquals(name, expected.startXs, actual.startXs);
+        assertArrayEquals(name, expected.startYs, actual.startYs);
+        assertArrayEquals(name, expected.shipXs, actual.shipXs);
+        assertArrayEquals(name, expected.shipYs, actual.shipYs);
+        assertArrayEquals(name, expected.enemies, actual.enemies);
+        assertArrayEquals(name, expected.coins, actual.coins);
+    }
+
+    /**
+     * Checks that two layers have the same tiles, including the border right around the map.
+     */
+    private static void assertLayer(String message, TileLayer expected, TileLayer actual) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+
+        boolean drawn = false;
+        for (int i = -1; i <= expected.getHeight(); i++) {
+            for (int j = -1; j <= expected.getWidth(); j++) {
+                assertEquals(message + " at (" + j + ", " + i + ")", expected.get(j, i), actual.get(j, i));
+                drawn |= i >= 0 && i < expected.getHeight() && j >= 0 && j < expected.getWidth() && expected.get(j, i) != 0;
+            }
+        }
+        assertTrue(message + " is empty", drawn);
+    }
+}
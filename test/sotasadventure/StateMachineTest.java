@@ -0,0 +1,128 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.CardLayout;
+
+import javax.swing.JPanel;
+
+import org.junit.Test;
+
+/**
+ * Checks that a state which fails to load sends the state machine back to the state it left,
+ * and does not keep it from changing again.
+ *
+ * @author Sota Nishiyama
+ */
+public class StateMachineTest {
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * A state which counts how many times it is entered, and whose loading may fail.
+     */
+    private static class CountingState extends State {
+        private final boolean broken;
+        private int entered;
+        private String optional;
+
+        private CountingState(boolean broken) {
+            this.broken = broken;
+        }
+
+        @Override
+        public void load(String optional) {
+            if (broken) {
+                throw new IllegalStateException("missing resources");
+            }
+        }
+
+        @Override
+        public void enter(String optional) {
+            entered++;
+            this.optional = optional;
+        }
+    }
+
+    @Test
+    public void failedLoadGoesBack() {
+        StateMachine machine = new StateMachine(new JPanel(new CardLayout()));
+        CountingState menu = new CountingState(false);
+        CountingState broken = new CountingState(true);
+        machine.add("menu", menu);
+        machine.add("broken", broken);
+
+        assertTrue(machine.change("menu", "first"));
+        tickUntilEntered(machine, menu, 1);
+
+        assertTrue(machine.change("broken", "stage"));
+        assertFalse(machine.change("menu"));
+        tickUntilEntered(machine, menu, 2);
+        assertEquals(0, broken.entered);
+        assertEquals("first", menu.optional);
+
+        // the failed change is over, so the next one is started
+        assertTrue(machine.change("menu", "second"));
+        tickUntilEntered(machine, menu, 3);
+        assertEquals("second", menu.optional);
+    }
+
+    @Test
+    public void failedFirstLoad() {
+        StateMachine machine = new StateMachine(new JPanel(new CardLayout()));
+        CountingState menu = new CountingState(false);
+        CountingState broken = new CountingState(true);
+        machine.add("menu", menu);
+        machine.add("broken", broken);
+
+        // there is no state to go back to, but the machine can still change
+        assertTrue(machine.change("broken"));
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!machine.change("menu")) {
+            tick(machine, deadline);
+        }
+        tickUntilEntered(machine, menu, 1);
+        assertEquals(0, broken.entered);
+    }
+
+    @Test
+    public void unknownState() {
+        StateMachine machine = new StateMachine(new JPanel(new CardLayout()));
+        CountingState menu = new CountingState(false);
+        machine.add("menu", menu);
+
+        assertTrue(machine.change("menu"));
+        tickUntilEntered(machine, menu, 1);
+
+        assertTrue(machine.change("nowhere"));
+        tickUntilEntered(machine, menu, 2);
+    }
+
+    /**
+     * Runs the game loop until the state has been entered the given number of times.
+     */
+    private static void tickUntilEntered(StateMachine machine, CountingState state, int times) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (state.entered < times) {
+            tick(machine, deadline);
+        }
+        assertEquals(times, state.entered);
+    }
+
+    /**
+     * Runs a tick of the game loop, failing if it has taken too long.
+     */
+    private static void tick(StateMachine machine, long deadline) {
+        if (System.currentTimeMillis() > deadline) {
+            fail("the state machine got stuck");
+        }
+        machine.update(0);
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
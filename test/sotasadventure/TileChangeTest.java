@@ -0,0 +1,180 @@
+package sotasadventure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+/**
+ * Checks that changing a tile updates how the tiles around it look, in dense and in chunked maps,
+ * and that the renderer draws the changed tiles again instead of its cached chunks.
+ *
+ * @author Sota Nishiyama
+ */
+public class TileChangeTest {
+    private static final String STAGE = "europe";
+    private static final int WIDTH = 1200;
+    private static final int HEIGHT = 600;
+
+    @Test
+    public void denseVisuals() {
+        Map map = new Map();
+        map.set(STAGE);
+        assertTrue(map.getStage().map[0] instanceof DenseTileLayer);
+
+        int[] surface = findSurface(map.getStage().map[0]);
+        int x = surface[0];
+        int y = surface[1];
+
+        // dig the surface, which makes the ground below it the surface, and put a block on the left of it
+        int below = map.getStage().visuals[0].get(x, y + 1);
+        map.setTile(x, y, Map.NONE);
+        map.setTile(x - 1, y - 1, Map.GROUND);
+        assertEquals(Stage.TILE_CENTER, below);
+        assertEquals(Stage.TILE_MID, map.getStage().visuals[0].get(x, y + 1));
+        assertVisuals(map.getStage());
+
+        assertEquals(Long.valueOf((long) y << 32 | x), map.pollChangedTile());
+        assertEquals(Long.valueOf((long) (y - 1) << 32 | (x - 1)), map.pollChangedTile());
+        assertNull(map.pollChangedTile());
+    }
+
+    @Test
+    public void chunkedVisuals() throws IOException {
+        // stream every map, however small it is
+        int streamedMapTiles = Constants.STREAMED_MAP_TILES;
+        HashMap<String, Stage> stages;
+        Constants.STREAMED_MAP_TILES = 0;
+        try {
+            stages = BinaryStageLoader.load("/resources/stages.bin");
+        } finally {
+            Constants.STREAMED_MAP_TILES = streamedMapTiles;
+        }
+        Stage stage = stages.get(STAGE);
+        assertTrue(stage.map[0] instanceof ChunkedTileLayer);
+        assertTrue(stage.visuals[0] instanceof ChunkedTileLayer);
+
+        // a tile on each side of the edge of a chunk, so that the looks of both chunks change
+        int y = findSurface(stage.map[0])[1];
+        int x = ChunkedTileLayer.CHUNK_SIZE;
+        stage.setTile(0, x - 1, y - 1, Map.GROUND);
+        stage.setTile(0, x, y - 1, Map.GROUND);
+        stage.setTile(0, x + 1, y, Map.NONE);
+        assertVisuals(stage);
+
+        // the changed chunks are kept while the others are read from the stage file again
+        for (int i = 0; i < 2; i++) {
+            ((ChunkedTileLayer) stage.map[0]).discardUnused();
+            ((ChunkedTileLayer) stage.visuals[0]).discardUnused();
+        }
+        assertEquals(2, ((ChunkedTileLayer) stage.map[0]).getChunkCount());
+        assertEquals(2, ((ChunkedTileLayer) stage.visuals[0]).getChunkCount());
+        assertEquals(Map.GROUND, stage.map[0].get(x - 1, y - 1));
+        assertEquals(Map.NONE, stage.map[0].get(x + 1, y));
+        assertVisuals(stage);
+    }
+
+    @Test
+    public void emptyChunk() {
+        ChunkedTileLayer layer = new ChunkedTileLayer(ChunkedTileLayer.CHUNK_SIZE * 3, 4, Map.GROUND, new ChunkedTileLayer.Source() {
+            @Override
+            public boolean read(int chunkX, byte[] tiles, int offset) {
+                return false;
+            }
+        });
+
+        // the empty chunks share their tiles, so changing one of them must not change the others
+        assertEquals(0, layer.get(ChunkedTileLayer.CHUNK_SIZE, 2));
+        assertEquals(0, layer.getChunkCount());
+        layer.set(ChunkedTileLayer.CHUNK_SIZE, 2, 200);
+        assertEquals(200, layer.get(ChunkedTileLayer.CHUNK_SIZE, 2));
+        assertEquals(0, layer.get(0, 2));
+        assertEquals(0, layer.get(ChunkedTileLayer.CHUNK_SIZE * 2, 2));
+        assertEquals(Map.GROUND, layer.get(ChunkedTileLayer.CHUNK_SIZE, -1));
+        assertEquals(Map.GROUND, layer.get(ChunkedTileLayer.CHUNK_SIZE * 3, 2));
+        assertEquals(1, layer.getChunkCount());
+
+        layer.discardUnused();
+        layer.discardUnused();
+        assertEquals(200, layer.get(ChunkedTileLayer.CHUNK_SIZE, 2));
+        assertEquals(1, layer.getChunkCount());
+    }
+
+    @Test
+    public void renderedChunks() {
+        Map map = new Map();
+        map.set(STAGE);
+        Stage stage = map.getStage();
+        MapRenderer renderer = new MapRenderer(map);
+        int[] before = draw(renderer, stage);
+
+        int[] surface = findSurface(stage.map[0]);
+        map.setTile(surface[0], surface[1], Map.NONE);
+        int[] after = draw(renderer, stage);
+        assertFalse(Arrays.equals(before, after));
+
+        // the chunks drawn again are the same as the ones of a renderer which has never drawn the map before
+        assertTrue(Arrays.equals(draw(new MapRenderer(map), stage), after));
+    }
+
+    /**
+     * Returns the first tile on the surface of the ground which is seen from the starting point,
+     * away from the edges of the map.
+     */
+    private static int[] findSurface(TileLayer tiles) {
+        int columns = Math.min(tiles.getWidth() - 1, WIDTH / Constants.TILE_SIZE);
+        int rows = Math.min(tiles.getHeight() - 1, HEIGHT / Constants.TILE_SIZE);
+        for (int i = 1; i < rows; i++) {
+            for (int j = 1; j < columns; j++) {
+                if (tiles.get(j, i) == Map.GROUND && tiles.get(j, i - 1) == Map.NONE && tiles.get(j, i + 1) == Map.GROUND) {
+                    return new int[] {j, i};
+                }
+            }
+        }
+        throw new AssertionError("no surface is seen");
+    }
+
+    /**
+     * Checks that the looks of every map of a stage are the ones a stage made from its tiles now has.
+     */
+    private static void assertVisuals(Stage stage) {
+        TileLayer[] copies = new TileLayer[stage.map.length];
+        for (int k = 0; k < stage.map.length; k++) {
+            int[][] values = new int[stage.map[k].getHeight()][stage.map[k].getWidth()];
+            for (int i = 0; i < values.length; i++) {
+                for (int j = 0; j < values[i].length; j++) {
+                    values[i][j] = stage.map[k].get(j, i);
+                }
+            }
+            copies[k] = TileLayer.of(values, Map.GROUND);
+        }
+        Stage expected = new Stage(stage.name, copies, stage.timeLimit, stage.spaceShipSpeed, stage.enemySpeed, stage.friction);
+
+        for (int k = 0; k < stage.map.length; k++) {
+            for (int i = 0; i < stage.map[k].getHeight(); i++) {
+                for (int j = 0; j < stage.map[k].getWidth(); j++) {
+                    assertEquals("map " + k + " at (" + j + ", " + i + ")", expected.visuals[k].get(j, i), stage.visuals[k].get(j, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the first map of a stage from its top left corner and returns the pixels.
+     */
+    private static int[] draw(MapRenderer renderer, Stage stage) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        renderer.draw(g2, stage, 0, 0, 0, WIDTH, HEIGHT);
+        g2.dispose();
+        return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+    }
+}